@@ -26,6 +26,7 @@ import java.security.PermissionCollection;
 import java.security.Permissions;
 import java.security.Policy;
 import java.security.ProtectionDomain;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,6 +36,12 @@ import java.util.regex.Pattern;
 
 import org.h2.Driver;
 
+import fr.gaellalire.vote.transport.WireRMIOverrides;
+import fr.gaellalire.vote.transport.WireServer;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.eddsa.EdDSATrustSystem;
+import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
+
 /**
  * @author Gael Lalire
  */
@@ -85,6 +92,52 @@ public abstract class AbstractLauncher implements Callable<Void> {
         }
     }
 
+    /**
+     * The transport property selects how actors talk : rmi (default) or wire.
+     */
+    public boolean isWireTransport(final Properties properties) {
+        return "wire".equals(properties.getProperty("transport", "rmi").trim());
+    }
+
+    /**
+     * @return a started wire server listening on wire.port, serving at most wire.maxConnections and closing connections idle for
+     *         wire.idleTimeout ms, null if the transport is RMI
+     */
+    public WireServer createWireServer(final Properties properties) throws IOException {
+        if (!isWireTransport(properties)) {
+            return null;
+        }
+        WireServer wireServer = new WireServer(Integer.parseInt(properties.getProperty("wire.port").trim()),
+                Integer.parseInt(properties.getProperty("wire.maxConnections").trim()), Integer.parseInt(properties.getProperty("wire.idleTimeout").trim()));
+        wireServer.start();
+        return wireServer;
+    }
+
+    /**
+     * @return overrides calling other actors with wire.connectTimeout and wire.readTimeout
+     */
+    public WireRMIOverrides createWireRMIOverrides(final Properties properties, final String stateHostAndPort, final WireServer wireServer) {
+        return new WireRMIOverrides(stateHostAndPort, wireServer, Integer.parseInt(properties.getProperty("wire.connectTimeout").trim()),
+                Integer.parseInt(properties.getProperty("wire.readTimeout").trim()));
+    }
+
+    /**
+     * The citizen.trustSystem property selects the keys of citizens : rsa (default) or eddsa. All actors of a vote must use the same.
+     */
+    public SignatureTrustSystem createCitizenTrustSystem(final Properties properties, final RSATrustSystem rsaTrustSystem, final SecureRandom random) {
+        return createCitizenTrustSystem(properties.getProperty("citizen.trustSystem", "rsa").trim(), rsaTrustSystem, random);
+    }
+
+    public static SignatureTrustSystem createCitizenTrustSystem(final String name, final RSATrustSystem rsaTrustSystem, final SecureRandom random) {
+        if ("rsa".equals(name)) {
+            return rsaTrustSystem;
+        }
+        if ("eddsa".equals(name)) {
+            return new EdDSATrustSystem(random);
+        }
+        throw new IllegalArgumentException("Unknown trust system " + name);
+    }
+
     public Properties loadProperties(final String fileName) throws IOException {
         Properties properties = new Properties();
         FileInputStream inStream = new FileInputStream(new File(config, fileName));
@@ -28,6 +28,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
@@ -36,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import fr.gaellalire.vote.actor.citizen.CitizenActor;
 import fr.gaellalire.vote.actor.citizen.CitizenListener;
 import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.actor.citizen.VotingListCache;
 import fr.gaellalire.vote.actor.party.PartyActor;
 import fr.gaellalire.vote.actor.party.service.PartyService;
 import fr.gaellalire.vote.actor.polling_station.PollingStationActor;
@@ -43,14 +46,32 @@ import fr.gaellalire.vote.actor.polling_station.service.PollingStationService;
 import fr.gaellalire.vote.actor.polling_station.service.PollingStationState;
 import fr.gaellalire.vote.actor.state.StateActor;
 import fr.gaellalire.vote.actor.state.service.StateService;
+import fr.gaellalire.vote.trust.SignaturePrivatePart;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.aes.AESUtils;
-import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.rsa.KeyPool;
+import fr.gaellalire.vote.trust.rsa.KeyPoolStore;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VoteDemo.class);
 
+    public static final String KEY_POOL_PASSWORD_PROPERTY = "vote.keyPool.password";
+
+    /**
+     * rsa (default) or eddsa, with eddsa the citizen keys are cheap enough to not need the key pool.
+     */
+    public static final String CITIZEN_TRUST_SYSTEM_PROPERTY = "vote.citizen.trustSystem";
+
+    /**
+     * Number of threads sending the ballots of all citizens of the demo to the parties, 2 by citizen thread and party when absent.
+     */
+    public static final String PARTY_VOTE_THREADS_PROPERTY = "vote.partyVote.threads";
+
+    private static final int KEY_POOL_CAPACITY = 2000;
+
     /**
      * Allow to test with a lot a citizen without having unlimited available ports
      * @author Gael Lalire
@@ -86,7 +107,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
         private BigInteger pollingStationPublicKeyModulus;
 
-        private RSAPrivatePart votingPrivatePart;
+        private SignaturePrivatePart votingPrivatePart;
 
         public VoteState(final CitizenActor citizenActor, final BigInteger pollingStationPublicKeyModulus) {
             this.citizenActor = citizenActor;
@@ -118,9 +139,10 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
         final File data = getData();
 
         Registry registry = LocateRegistry.createRegistry(1099);
+        KeyPool keyPool = null;
         try {
 
-            final SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+            final SecureRandom random = ThreadLocalSecureRandom.create();
             // long citizenNumber = 67000000;
             // long pollingStationNumber = 1000;
 
@@ -131,6 +153,21 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
             final RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
             final AESUtils aesUtils = new AESUtils(random);
+            final SignatureTrustSystem citizenTrustSystem = createCitizenTrustSystem(System.getProperty(CITIZEN_TRUST_SYSTEM_PROPERTY, "rsa"), rsaTrustSystem, random);
+            // all citizens of the demo share the lists they download, as on a shared device
+            final VotingListCache votingListCache = new VotingListCache(VotingListCache.DEFAULT_MAX_ENTRIES);
+            final ExecutorService partyVoteExecutor = CitizenActor
+                    .createPartyVoteExecutor(Integer.getInteger(PARTY_VOTE_THREADS_PROPERTY, 2 * citizenThread * partyNumber));
+
+            // keys are generated in background, they are kept encrypted on disk between two runs only if a password is given
+            KeyPoolStore keyPoolStore = null;
+            String keyPoolPassword = System.getProperty(KEY_POOL_PASSWORD_PROPERTY);
+            if (keyPoolPassword != null) {
+                keyPoolStore = new KeyPoolStore(new File(data, "keypool.data"), keyPoolPassword.toCharArray(), aesUtils, random);
+            }
+            keyPool = new KeyPool(rsaTrustSystem, KEY_POOL_CAPACITY, keyPoolStore);
+            keyPool.start();
+            rsaTrustSystem.setKeyPool(keyPool);
 
             final DemoRMIOverrides overrides = new DemoRMIOverrides();
 
@@ -141,7 +178,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
             entityManagerProperties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
 
             LOGGER.info("Creating state");
-            StateActor stateActor = StateActor.create(rsaTrustSystem, "localhost", new HashMap<>(entityManagerProperties));
+            StateActor stateActor = StateActor.create(citizenTrustSystem, "localhost", new HashMap<>(entityManagerProperties));
             overrides.stateService = stateActor;
             LOGGER.info("State created");
             try {
@@ -154,8 +191,8 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
                         partyActorDataFile.delete();
                         String partyName = String.valueOf(i);
                         entityManagerProperties.put("hibernate.connection.url", "jdbc:h2:" + data.toURI().toURL().toString() + "/db/party" + partyName);
-                        PartyActor partyActor = PartyActor.create(rsaTrustSystem, aesUtils, "localhost", "localhost", partyName, partyActorDataFile,
-                                new HashMap<>(entityManagerProperties));
+                        PartyActor partyActor = PartyActor.create(rsaTrustSystem, citizenTrustSystem, aesUtils, "localhost", "localhost", partyName,
+                                partyActorDataFile, new HashMap<>(entityManagerProperties), null);
                         partyActors.add(partyActor);
                         overrides.partyServiceByName.put(partyActor.getName(), partyActor);
                     }
@@ -171,7 +208,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
                             privateKeyFile.delete();
                             String pollingStationName = String.valueOf(i);
                             entityManagerProperties.put("hibernate.connection.url", "jdbc:h2:" + data.toURI().toURL().toString() + "/db/pollingStation" + pollingStationName);
-                            PollingStationActor pollingStationActor = PollingStationActor.create(rsaTrustSystem, aesUtils, "localhost", "localhost", pollingStationName,
+                            PollingStationActor pollingStationActor = PollingStationActor.create(rsaTrustSystem, citizenTrustSystem, "localhost", "localhost", pollingStationName,
                                     privateKeyFile, new HashMap<>(entityManagerProperties), overrides);
                             pollingStationActors.add(pollingStationActor);
                             overrides.pollingStationServiceByName.put(pollingStationActor.getName(), pollingStationActor);
@@ -183,7 +220,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
                         for (int i = 0; i < citizenNumber; i++) {
                             File citizenActorDataFile = new File(data, "ca" + i + ".data");
                             // citizenActorDataFile.delete();
-                            CitizenActor.create(rsaTrustSystem, aesUtils, "localhost", "SS" + i, String.valueOf(i % pollingStationNumber), citizenActorDataFile, overrides);
+                            CitizenActor.create(rsaTrustSystem, citizenTrustSystem, aesUtils, "localhost", "SS" + i, String.valueOf(i % pollingStationNumber), citizenActorDataFile, overrides);
                         }
                         LOGGER.info("Citizens created");
 
@@ -206,8 +243,16 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
                         final long[] remain = new long[1];
                         remain[0] = citizenNumber;
+                        final AtomicLong rejectedBallots = new AtomicLong();
                         final CitizenListener citizenListener = new CitizenListener() {
 
+                            @Override
+                            public void partyVoteDone(final String partyName, final Exception error) {
+                                if (error != null) {
+                                    rejectedBallots.incrementAndGet();
+                                }
+                            }
+
                             @Override
                             public void voteDone() {
                                 synchronized (remain) {
@@ -241,7 +286,9 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
                                         for (int j = finalI; j < citizenNumber; j += citizenThread) {
                                             File citizenActorDataFile = new File(data, "ca" + j + ".data");
-                                            final CitizenActor citizenActor = CitizenActor.restore(rsaTrustSystem, aesUtils, citizenActorDataFile, overrides);
+                                            final CitizenActor citizenActor = CitizenActor.restore(rsaTrustSystem, citizenTrustSystem, aesUtils, citizenActorDataFile, overrides);
+                                            citizenActor.setVotingListCache(votingListCache);
+                                            citizenActor.setPartyVoteExecutor(partyVoteExecutor);
                                             BigInteger pollingStationPublicKeyModulus = citizenActor.register();
                                             citizenListener.registerDone();
                                             voteStates.add(new VoteState(citizenActor, pollingStationPublicKeyModulus));
@@ -254,7 +301,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
 
                                         for (VoteState voteState : voteStates) {
                                             voteState.citizenActor.waitFor(PollingStationState.WAIT_FOR_SIGNATURE);
-                                            voteState.citizenActor.sendVotingModulusListSignature(voteState.votingPrivatePart.getPublicPart().getModulus());
+                                            voteState.citizenActor.sendVotingModulusListSignature(voteState.votingPrivatePart.getPublicPart().getKey());
                                         }
 
                                         for (VoteState voteState : voteStates) {
@@ -264,7 +311,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
                                                 judgments[j] = Judgment.values()[(int) (random.nextDouble() * (Judgment.values().length - 1))];
                                             }
 
-                                            voteState.citizenActor.sendVote(voteState.votingPrivatePart, new Ballot(judgments));
+                                            voteState.citizenActor.sendVote(voteState.votingPrivatePart, new Ballot(judgments), citizenListener);
                                             citizenListener.voteDone();
                                         }
                                     } catch (Exception e) {
@@ -298,7 +345,7 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
                             }
                         }
 
-                        LOGGER.info("Stop the vote");
+                        LOGGER.info("Stop the vote, {} ballots not accepted by a party", rejectedBallots.get());
                         for (PartyActor partyActor : partyActors) {
                             partyActor.endVote();
                         }
@@ -320,6 +367,9 @@ public class VoteDemo extends AbstractLauncher implements Callable<Void> {
             }
 
         } finally {
+            if (keyPool != null) {
+                keyPool.close();
+            }
             UnicastRemoteObject.unexportObject(registry, true);
         }
 
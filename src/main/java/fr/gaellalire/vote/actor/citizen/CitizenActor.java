@@ -16,8 +16,6 @@
 
 package fr.gaellalire.vote.actor.citizen;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -32,10 +30,13 @@ import java.security.SecureRandom;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import javax.crypto.SecretKey;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
@@ -53,8 +54,12 @@ import fr.gaellalire.vote.actor.state.service.Citizen;
 import fr.gaellalire.vote.actor.state.service.Party;
 import fr.gaellalire.vote.actor.state.service.PollingStation;
 import fr.gaellalire.vote.actor.state.service.StateService;
+import fr.gaellalire.vote.trust.HybridEnvelope;
+import fr.gaellalire.vote.trust.SignaturePrivatePart;
+import fr.gaellalire.vote.trust.SignaturePublicPart;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.aes.AESUtils;
-import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
 import fr.gaellalire.vote.trust.rsa.RSAPublicPart;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
@@ -66,14 +71,21 @@ public class CitizenActor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CitizenActor.class);
 
+    /**
+     * Maximum time a single long poll is kept by the polling station.
+     */
+    private static final long AWAIT_STATE_TIMEOUT = 30000;
+
     // should be kept in smartcard (maybe knox ?)
-    private RSAPrivatePart ssPrivatePart;
+    private SignaturePrivatePart ssPrivatePart;
 
-    private RSAPrivatePart votingPrivatePart;
+    private SignaturePrivatePart votingPrivatePart;
 
     private RSATrustSystem rsaTrustSystem;
 
-    private AESUtils aesUtils;
+    private SignatureTrustSystem citizenTrustSystem;
+
+    private HybridEnvelope hybridEnvelope;
 
     private Citizen citizen;
 
@@ -83,20 +95,50 @@ public class CitizenActor {
 
     private PollingStationService pollingStationService;
 
-    private List<PartyService> partyServices;
+    private Map<String, PartyService> partyServiceByName;
+
+    private VotingListCache votingListCache = new VotingListCache(VotingListCache.DEFAULT_MAX_ENTRIES);
 
-    public CitizenActor(final RSAPrivatePart ssPrivatePart, final RSAPrivatePart votingPrivatePart, final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils,
-            final Citizen citizen, final PollingStation pollingStation, final StateService stateService, final PollingStationService pollingStationService,
-            final List<PartyService> partyServices) {
+    /**
+     * Null to send the ballot to one party after the other.
+     */
+    private ExecutorService partyVoteExecutor;
+
+    public CitizenActor(final SignaturePrivatePart ssPrivatePart, final SignaturePrivatePart votingPrivatePart, final RSATrustSystem rsaTrustSystem,
+            final SignatureTrustSystem citizenTrustSystem, final AESUtils aesUtils, final Citizen citizen, final PollingStation pollingStation, final StateService stateService,
+            final PollingStationService pollingStationService, final Map<String, PartyService> partyServiceByName) {
         this.ssPrivatePart = ssPrivatePart;
         this.votingPrivatePart = votingPrivatePart;
         this.rsaTrustSystem = rsaTrustSystem;
-        this.aesUtils = aesUtils;
+        this.citizenTrustSystem = citizenTrustSystem;
+        this.hybridEnvelope = new HybridEnvelope(aesUtils.getRandom());
         this.citizen = citizen;
         this.pollingStation = pollingStation;
         this.stateService = stateService;
         this.pollingStationService = pollingStationService;
-        this.partyServices = partyServices;
+        this.partyServiceByName = partyServiceByName;
+    }
+
+    /**
+     * @param votingListCache shared by the citizens of a device, each citizen has its own cache otherwise
+     */
+    public void setVotingListCache(final VotingListCache votingListCache) {
+        this.votingListCache = votingListCache;
+    }
+
+    /**
+     * @param partyVoteExecutor sends the ballot to the parties in parallel, its size bounds the ballots in flight of the citizens sharing it
+     */
+    public void setPartyVoteExecutor(final ExecutorService partyVoteExecutor) {
+        this.partyVoteExecutor = partyVoteExecutor;
+    }
+
+    public static ExecutorService createPartyVoteExecutor(final int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "citizen-party-vote");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public void vote(final Ballot ballot) throws Exception {
@@ -121,59 +163,53 @@ public class CitizenActor {
         return pollingStationPublicKeyModulus;
     }
 
-    public RSAPrivatePart sendVotingPublicPartModulus(final BigInteger pollingStationPublicKeyModulus) throws Exception {
+    public SignaturePrivatePart sendVotingPublicPartModulus(final BigInteger pollingStationPublicKeyModulus) throws Exception {
         // could also be generated in smartcard
 
-        RSAPublicPart votingPublicPart = votingPrivatePart.getPublicPart();
+        SignaturePublicPart votingPublicPart = votingPrivatePart.getPublicPart();
         RSAPublicPart pollingStationPublicPart = rsaTrustSystem.publicPartByModulus(pollingStationPublicKeyModulus);
-        BigInteger votingPublicPartModulus = votingPublicPart.getModulus();
-
-        SecretKey secretKey = aesUtils.generateKey();
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        byte[] iv = aesUtils.encrypt(secretKey, new ByteArrayInputStream(votingPublicPartModulus.toByteArray()), os);
-        byte[] votingPublicPartModulusAESCrypted = os.toByteArray();
+        BigInteger votingPublicPartModulus = votingPublicPart.getKey();
 
-        os.reset();
-        pollingStationPublicPart.encrypt(new ByteArrayInputStream(secretKey.getEncoded()), os);
-        byte[] aesKeyRSACrypted = os.toByteArray();
+        byte[] votingPublicPartModulusEnvelope = hybridEnvelope.seal(pollingStationPublicPart, votingPublicPartModulus.toByteArray());
 
-        pollingStationService.sendVotingPublicPartModulus(iv, aesKeyRSACrypted, votingPublicPartModulusAESCrypted);
+        pollingStationService.sendVotingPublicPartModulus(votingPublicPartModulusEnvelope);
 
         return votingPrivatePart;
     }
 
     public void sendVotingModulusListSignature(final BigInteger votingPublicPartModulus) throws Exception {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        VotingModulusList votingModulusList = pollingStationService.getVotingModulusList();
+        VotingModulusList votingModulusList = votingListCache.getVotingModulusList(pollingStation.getName(), pollingStationService);
 
-        if (!votingModulusList.getModulus().contains(votingPublicPartModulus)) {
+        if (!votingModulusList.contains(votingPublicPartModulus)) {
             // our key is not in the list, we cannot sign
 
             // we ask for degraded mode, polling station cannot generate a new votingModulusList because allowing that would cause an issue to our anonymity
-            os.reset();
-            ssPrivatePart.sign(new ByteArrayInputStream(citizen.getSsNumber().getBytes("UTF-8")), os);
-            byte[] signature = os.toByteArray();
+            byte[] signature = ssPrivatePart.sign(citizen.getSsNumber().getBytes("UTF-8"));
             pollingStationService.switchToDegradedMode(citizen.getSsNumber(), signature);
 
             // TODO degraded mode
 
             throw new VoteException("missing our key in votingModulusList");
         }
-        byte[] encoded = votingModulusList.getEncoded();
-        os.reset();
-        ssPrivatePart.sign(new ByteArrayInputStream(encoded), os);
-        byte[] signature = os.toByteArray();
+        byte[] signature = ssPrivatePart.signDigest(votingModulusList.getSha512());
 
         pollingStationService.sendVotingModulusListSignature(citizen.getSsNumber(), signature);
     }
 
-    public void sendVote(final RSAPrivatePart votingPrivatePart, final Ballot ballot) throws Exception {
+    public void sendVote(final SignaturePrivatePart votingPrivatePart, final Ballot ballot) throws Exception {
+        sendVote(votingPrivatePart, ballot, null);
+    }
+
+    /**
+     * Return when every party answered.
+     */
+    public void sendVote(final SignaturePrivatePart votingPrivatePart, final Ballot ballot, final CitizenListener citizenListener) throws Exception {
         // check that all signature are good
-        VotingSignatureList signatureList = pollingStationService.getSignatureList();
+        VotingSignatureList signatureList = votingListCache.getSignatureList(pollingStation.getName(), pollingStationService);
         Map<String, byte[]> signatureBySSNumber = signatureList.getSignatureBySSNumber();
 
         List<String> ssNumbers = new ArrayList<String>();
-        List<Citizen> pollingStationCitizenList = stateService.getPollingStationCitizenList(pollingStation.getName());
+        List<Citizen> pollingStationCitizenList = votingListCache.getPollingStationCitizenList(pollingStation.getName(), stateService);
         for (Citizen citizen : pollingStationCitizenList) {
             ssNumbers.add(citizen.getSsNumber());
         }
@@ -183,13 +219,13 @@ public class CitizenActor {
             throw new VoteException("missing ss number in signatureBySSNumber");
         }
 
-        VotingModulusList votingModulusList = pollingStationService.getVotingModulusList();
-        byte[] encoded = votingModulusList.getEncoded();
+        VotingModulusList votingModulusList = votingListCache.getVotingModulusList(pollingStation.getName(), pollingStationService);
+        byte[] votingModulusListSha512 = votingModulusList.getSha512();
 
         for (Citizen citizen : pollingStationCitizenList) {
             byte[] bs = signatureBySSNumber.get(citizen.getSsNumber());
-            RSAPublicPart rsaPublicPart = rsaTrustSystem.publicPartByModulus(citizen.getPublicKeyModulus());
-            if (!rsaPublicPart.verify(new ByteArrayInputStream(encoded), new ByteArrayInputStream(bs))) {
+            SignaturePublicPart citizenPublicPart = citizenTrustSystem.publicPartByKey(citizen.getPublicKeyModulus());
+            if (!citizenPublicPart.verifyDigest(votingModulusListSha512, bs)) {
                 // invalid list, should report corruption of polling station
                 throw new VoteException("signatureBySSNumber has bad signature for " + citizen.getSsNumber());
             }
@@ -197,18 +233,38 @@ public class CitizenActor {
 
         // all clear we finally can send our vote to the party subset of our choice
 
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        votingPrivatePart.sign(new ByteArrayInputStream(ballot.getEncoded()), os);
-        byte[] ballotSignature = os.toByteArray();
-        for (PartyService partyService : partyServices) {
-            String partyName = "unknown";
-            try {
-                partyName = partyService.getName();
-                partyService.vote(votingPrivatePart.getPublicPart().getModulus(), ballot, ballotSignature);
-            } catch (Exception e) {
-                LOGGER.error("Unable to vote at party " + partyName + " with modulus " + votingPrivatePart.getPublicPart().getModulus().toString(16), e);
+        byte[] ballotSignature = votingPrivatePart.sign(ballot.getEncoded());
+        BigInteger votingModulus = votingPrivatePart.getPublicPart().getKey();
+        List<Future<?>> futures = new ArrayList<Future<?>>(partyServiceByName.size());
+        for (Entry<String, PartyService> entry : partyServiceByName.entrySet()) {
+            final String partyName = entry.getKey();
+            final PartyService partyService = entry.getValue();
+            Runnable partyVote = new Runnable() {
+
+                @Override
+                public void run() {
+                    Exception error = null;
+                    try {
+                        partyService.vote(votingModulus, ballot, ballotSignature);
+                    } catch (Exception e) {
+                        LOGGER.error("Unable to vote at party " + partyName + " with modulus " + votingModulus.toString(16), e);
+                        error = e;
+                    }
+                    if (citizenListener != null) {
+                        citizenListener.partyVoteDone(partyName, error);
+                    }
+                }
+            };
+            if (partyVoteExecutor == null) {
+                partyVote.run();
+            } else {
+                // parties are independent, their latency should not add up
+                futures.add(partyVoteExecutor.submit(partyVote));
             }
         }
+        for (Future<?> future : futures) {
+            future.get();
+        }
     }
 
     public void vote(final Ballot ballot, final CitizenListener citizenListener) throws Exception {
@@ -222,21 +278,21 @@ public class CitizenActor {
         waitFor(PollingStationState.WAIT_FOR_VOTING_KEYS);
         LOGGER.debug("WAIT_FOR_VOTING_KEYS done");
 
-        RSAPrivatePart votingPrivatePart = sendVotingPublicPartModulus(pollingStationPublicKeyModulus);
+        SignaturePrivatePart votingPrivatePart = sendVotingPublicPartModulus(pollingStationPublicKeyModulus);
 
         // WAIT FOR votingModulusList to be ready
         LOGGER.debug("WAIT_FOR_SIGNATURE in progress");
         waitFor(PollingStationState.WAIT_FOR_SIGNATURE);
         LOGGER.debug("WAIT_FOR_SIGNATURE done");
 
-        sendVotingModulusListSignature(votingPrivatePart.getPublicPart().getModulus());
+        sendVotingModulusListSignature(votingPrivatePart.getPublicPart().getKey());
 
         // WAIT FOR all signatures to be sent
         LOGGER.debug("wait for WORK_DONE");
         waitFor(PollingStationState.WORK_DONE);
         LOGGER.debug("WORK_DONE done");
 
-        sendVote(votingPrivatePart, ballot);
+        sendVote(votingPrivatePart, ballot, citizenListener);
 
         if (citizenListener != null) {
             citizenListener.voteDone();
@@ -247,11 +303,9 @@ public class CitizenActor {
     }
 
     public void waitFor(final PollingStationState pollingStationState) throws RemoteException {
-        while (pollingStationService.getState() != pollingStationState) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-            }
+        // the polling station answers as soon as it reaches the state, we only loop when the long poll expires
+        while (pollingStationService.awaitState(pollingStationState, AWAIT_STATE_TIMEOUT).compareTo(pollingStationState) < 0) {
+            LOGGER.debug("Still waiting for {}", pollingStationState);
         }
     }
 
@@ -262,6 +316,14 @@ public class CitizenActor {
 
     public static CitizenActor create(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final String stateHost, final String ssNumber, final String pollingStationName,
             final File dataFile, final RMIOverrides citizenOverrides) throws Exception {
+        return create(rsaTrustSystem, rsaTrustSystem, aesUtils, stateHost, ssNumber, pollingStationName, dataFile, citizenOverrides);
+    }
+
+    /**
+     * @param citizenTrustSystem trust system of the ss and voting keys, the polling station key is always RSA
+     */
+    public static CitizenActor create(final RSATrustSystem rsaTrustSystem, final SignatureTrustSystem citizenTrustSystem, final AESUtils aesUtils, final String stateHost,
+            final String ssNumber, final String pollingStationName, final File dataFile, final RMIOverrides citizenOverrides) throws Exception {
         StateService stateService = null;
         if (citizenOverrides != null) {
             stateService = citizenOverrides.getStateService();
@@ -271,8 +333,8 @@ public class CitizenActor {
             stateService = (StateService) registry.lookup("State");
         }
 
-        RSAPrivatePart ssPrivatePart;
-        RSAPrivatePart votingPrivatePart;
+        SignaturePrivatePart ssPrivatePart;
+        SignaturePrivatePart votingPrivatePart;
         { // try to restore at least the key, because it takes a lot of time to create
             try {
                 ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(dataFile));
@@ -281,23 +343,24 @@ public class CitizenActor {
                     ssPrivatePart = citizenActorData.getSsPrivatePart();
                     votingPrivatePart = citizenActorData.getVotingPrivatePart();
                     if (votingPrivatePart == null) {
-                        votingPrivatePart = rsaTrustSystem.generatePrivatePart();
+                        votingPrivatePart = citizenTrustSystem.generatePrivatePart();
                     }
                 } finally {
                     objectInputStream.close();
                 }
             } catch (Exception e) {
                 // sadly we have to create a key
-                ssPrivatePart = rsaTrustSystem.generatePrivatePart();
-                votingPrivatePart = rsaTrustSystem.generatePrivatePart();
+                ssPrivatePart = citizenTrustSystem.generatePrivatePart();
+                votingPrivatePart = citizenTrustSystem.generatePrivatePart();
             }
         }
 
-        RSAPublicPart publicPart = ssPrivatePart.getPublicPart();
+        SignaturePublicPart publicPart = ssPrivatePart.getPublicPart();
 
-        stateService.addCitizen(ssNumber, pollingStationName, publicPart.getModulus());
+        stateService.addCitizen(ssNumber, pollingStationName, publicPart.getKey());
 
-        List<PartyService> partyServices = new ArrayList<PartyService>();
+        // party names are kept so that sending a ballot does not ask each party its name
+        Map<String, PartyService> partyServiceByName = new LinkedHashMap<String, PartyService>();
         List<Party> partyList = stateService.getPartyList();
         for (Party party : partyList) {
             PartyService partyService = null;
@@ -308,7 +371,7 @@ public class CitizenActor {
                 Registry partyRegistry = LocateRegistry.getRegistry(party.getHost());
                 partyService = (PartyService) partyRegistry.lookup(party.getRmiName());
             }
-            partyServices.add(partyService);
+            partyServiceByName.put(party.getName(), partyService);
         }
 
         Citizen citizen = stateService.getCitizen(ssNumber);
@@ -334,7 +397,8 @@ public class CitizenActor {
             }
         }
 
-        return new CitizenActor(ssPrivatePart, votingPrivatePart, rsaTrustSystem, aesUtils, citizen, pollingStation, stateService, pollingStationService, partyServices);
+        return new CitizenActor(ssPrivatePart, votingPrivatePart, rsaTrustSystem, citizenTrustSystem, aesUtils, citizen, pollingStation, stateService, pollingStationService,
+                partyServiceByName);
     }
 
     public static CitizenActor restore(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final File dataFile) throws Exception {
@@ -342,6 +406,11 @@ public class CitizenActor {
     }
 
     public static CitizenActor restore(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final File dataFile, final RMIOverrides citizenOverrides) throws Exception {
+        return restore(rsaTrustSystem, rsaTrustSystem, aesUtils, dataFile, citizenOverrides);
+    }
+
+    public static CitizenActor restore(final RSATrustSystem rsaTrustSystem, final SignatureTrustSystem citizenTrustSystem, final AESUtils aesUtils, final File dataFile,
+            final RMIOverrides citizenOverrides) throws Exception {
 
         CitizenActorData citizenActorData;
         ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(dataFile));
@@ -360,7 +429,8 @@ public class CitizenActor {
             stateService = (StateService) registry.lookup("State");
         }
 
-        List<PartyService> partyServices = new ArrayList<PartyService>();
+        // party names are kept so that sending a ballot does not ask each party its name
+        Map<String, PartyService> partyServiceByName = new LinkedHashMap<String, PartyService>();
         List<Party> partyList = stateService.getPartyList();
         for (Party party : partyList) {
             PartyService partyService = null;
@@ -371,7 +441,7 @@ public class CitizenActor {
                 Registry partyRegistry = LocateRegistry.getRegistry(party.getHost());
                 partyService = (PartyService) partyRegistry.lookup(party.getRmiName());
             }
-            partyServices.add(partyService);
+            partyServiceByName.put(party.getName(), partyService);
         }
 
         Citizen citizen = stateService.getCitizen(citizenActorData.getSsNumber());
@@ -389,16 +459,17 @@ public class CitizenActor {
             pollingStationService = (PollingStationService) pollingStationRegistry.lookup(pollingStation.getRmiName());
         }
 
-        RSAPrivatePart ssPrivatePart = citizenActorData.getSsPrivatePart();
-        RSAPrivatePart votingPrivatePart = citizenActorData.getVotingPrivatePart();
+        SignaturePrivatePart ssPrivatePart = citizenActorData.getSsPrivatePart();
+        SignaturePrivatePart votingPrivatePart = citizenActorData.getVotingPrivatePart();
 
-        return new CitizenActor(ssPrivatePart, votingPrivatePart, rsaTrustSystem, aesUtils, citizen, pollingStation, stateService, pollingStationService, partyServices);
+        return new CitizenActor(ssPrivatePart, votingPrivatePart, rsaTrustSystem, citizenTrustSystem, aesUtils, citizen, pollingStation, stateService, pollingStationService,
+                partyServiceByName);
     }
 
     public static void main(final String[] args) throws Exception {
         Security.addProvider(new BouncyCastleProvider());
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
         AESUtils aesUtils = new AESUtils(random);
 
@@ -18,7 +18,7 @@ package fr.gaellalire.vote.actor.citizen;
 
 import java.io.Serializable;
 
-import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.SignaturePrivatePart;
 
 /**
  * @author Gael Lalire
@@ -32,11 +32,11 @@ public class CitizenActorData implements Serializable {
     private String ssNumber;
 
     // should be kept in smartcard (maybe knox ?)
-    private RSAPrivatePart ssPrivatePart;
+    private SignaturePrivatePart ssPrivatePart;
 
-    private RSAPrivatePart votingPrivatePart;
+    private SignaturePrivatePart votingPrivatePart;
 
-    public CitizenActorData(final String stateHost, final String ssNumber, final RSAPrivatePart ssPrivatePart, final RSAPrivatePart votingPrivatePart) {
+    public CitizenActorData(final String stateHost, final String ssNumber, final SignaturePrivatePart ssPrivatePart, final SignaturePrivatePart votingPrivatePart) {
         this.stateHost = stateHost;
         this.ssNumber = ssNumber;
         this.ssPrivatePart = ssPrivatePart;
@@ -51,11 +51,11 @@ public class CitizenActorData implements Serializable {
         return ssNumber;
     }
 
-    public RSAPrivatePart getSsPrivatePart() {
+    public SignaturePrivatePart getSsPrivatePart() {
         return ssPrivatePart;
     }
 
-    public RSAPrivatePart getVotingPrivatePart() {
+    public SignaturePrivatePart getVotingPrivatePart() {
         return votingPrivatePart;
     }
 }
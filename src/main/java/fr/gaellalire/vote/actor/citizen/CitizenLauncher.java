@@ -30,6 +30,8 @@ import org.slf4j.LoggerFactory;
 import fr.gaellalire.vote.AbstractLauncher;
 import fr.gaellalire.vote.Ballot;
 import fr.gaellalire.vote.Judgment;
+import fr.gaellalire.vote.transport.WireRMIOverrides;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.aes.AESUtils;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
@@ -70,7 +72,7 @@ public class CitizenLauncher extends AbstractLauncher implements Callable<Void>
 
         Properties properties = loadProperties("citizen.properties");
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
         AESUtils aesUtils = new AESUtils(random);
@@ -79,8 +81,16 @@ public class CitizenLauncher extends AbstractLauncher implements Callable<Void>
         String pollingStationName = properties.getProperty("pollingStationName");
         File privateKeyFile = new File(data, "ca.key");
 
+        RMIOverrides rmiOverrides = null;
+        if (isWireTransport(properties)) {
+            rmiOverrides = createWireRMIOverrides(properties, properties.getProperty("stateHost"), null);
+        }
+
         LOGGER.info("Creating citizen");
-        CitizenActor citizenActor = CitizenActor.create(rsaTrustSystem, aesUtils, properties.getProperty("stateHost"), ssNumber, pollingStationName, privateKeyFile);
+        CitizenActor citizenActor = CitizenActor.create(rsaTrustSystem, createCitizenTrustSystem(properties, rsaTrustSystem, random), aesUtils,
+                properties.getProperty("stateHost"), ssNumber, pollingStationName, privateKeyFile, rmiOverrides);
+        citizenActor.setVotingListCache(new VotingListCache(Integer.parseInt(properties.getProperty("votingListCache.maxEntries").trim())));
+        citizenActor.setPartyVoteExecutor(CitizenActor.createPartyVoteExecutor(Integer.parseInt(properties.getProperty("partyVote.threads").trim())));
 
         LOGGER.info("Citizen created");
 
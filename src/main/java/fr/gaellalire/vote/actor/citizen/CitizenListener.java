@@ -25,4 +25,11 @@ public interface CitizenListener {
 
     void voteDone();
 
+    /**
+     * Called once per party after the ballot was sent to it, possibly from another thread.
+     * @param error null if the party accepted the ballot
+     */
+    default void partyVoteDone(final String partyName, final Exception error) {
+    }
+
 }
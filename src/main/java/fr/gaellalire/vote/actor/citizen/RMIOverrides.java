@@ -16,6 +16,8 @@
 
 package fr.gaellalire.vote.actor.citizen;
 
+import java.rmi.Remote;
+
 import fr.gaellalire.vote.actor.party.service.PartyService;
 import fr.gaellalire.vote.actor.polling_station.service.PollingStationService;
 import fr.gaellalire.vote.actor.state.service.StateService;
@@ -31,4 +33,12 @@ public interface RMIOverrides {
 
     PartyService getPartyService(String partyName);
 
+    /**
+     * Make an actor reachable by the others.
+     * @return false to bind it in the RMI registry
+     */
+    default boolean bind(final String name, final Remote remote) throws Exception {
+        return false;
+    }
+
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.citizen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.gaellalire.vote.actor.polling_station.service.PollingStationService;
+import fr.gaellalire.vote.actor.polling_station.service.VotingListSnapshot;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.CitizenListSnapshot;
+import fr.gaellalire.vote.actor.state.service.Citizen;
+import fr.gaellalire.vote.actor.state.service.StateService;
+
+/**
+ * Keeps the frozen lists of the polling stations by digest. A list is only downloaded again if the polling station publishes another digest, so citizens sharing a
+ * device (or a single citizen asking twice) do not transfer the same bytes again. Each map keeps at most maxEntries lists, the least recently used
+ * is evicted first. The launcher creates the cache and gives it to the citizens sharing it.
+ * @author Gael Lalire
+ */
+public class VotingListCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static final class LRUMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 4129283648514412384L;
+
+        private int maxEntries;
+
+        LRUMap(final int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+
+    }
+
+    private Map<String, VotingListSnapshot> modulusSnapshotByPollingStation;
+
+    private Map<String, VotingListSnapshot> signatureSnapshotByPollingStation;
+
+    private Map<ByteBuffer, List<Citizen>> citizenListByDigest;
+
+    private Map<ByteBuffer, Object> listByDigest;
+
+    public VotingListCache(final int maxEntries) {
+        modulusSnapshotByPollingStation = Collections.synchronizedMap(new LRUMap<String, VotingListSnapshot>(maxEntries));
+        signatureSnapshotByPollingStation = Collections.synchronizedMap(new LRUMap<String, VotingListSnapshot>(maxEntries));
+        citizenListByDigest = Collections.synchronizedMap(new LRUMap<ByteBuffer, List<Citizen>>(maxEntries));
+        listByDigest = Collections.synchronizedMap(new LRUMap<ByteBuffer, Object>(maxEntries));
+    }
+
+    public VotingModulusList getVotingModulusList(final String pollingStationName, final PollingStationService pollingStationService) throws RemoteException, VoteException {
+        VotingListSnapshot known = modulusSnapshotByPollingStation.get(pollingStationName);
+        VotingListSnapshot snapshot = pollingStationService.getVotingModulusListSnapshot(known == null ? null : known.getDigest());
+        snapshot = select(known, snapshot, "votingModulusList");
+        modulusSnapshotByPollingStation.put(pollingStationName, snapshot);
+        ByteBuffer key = ByteBuffer.wrap(snapshot.getDigest());
+        VotingModulusList votingModulusList = (VotingModulusList) listByDigest.get(key);
+        if (votingModulusList == null) {
+            try {
+                votingModulusList = snapshot.toVotingModulusList();
+            } catch (IOException e) {
+                throw new VoteException("votingModulusList snapshot cannot be read", e);
+            }
+            listByDigest.put(key, votingModulusList);
+        }
+        return votingModulusList;
+    }
+
+    public VotingSignatureList getSignatureList(final String pollingStationName, final PollingStationService pollingStationService) throws RemoteException, VoteException {
+        VotingListSnapshot known = signatureSnapshotByPollingStation.get(pollingStationName);
+        VotingListSnapshot snapshot = pollingStationService.getSignatureListSnapshot(known == null ? null : known.getDigest());
+        snapshot = select(known, snapshot, "signatureList");
+        signatureSnapshotByPollingStation.put(pollingStationName, snapshot);
+        ByteBuffer key = ByteBuffer.wrap(snapshot.getDigest());
+        VotingSignatureList votingSignatureList = (VotingSignatureList) listByDigest.get(key);
+        if (votingSignatureList == null) {
+            try {
+                votingSignatureList = snapshot.toVotingSignatureList();
+            } catch (IOException e) {
+                throw new VoteException("signatureList snapshot cannot be read", e);
+            }
+            listByDigest.put(key, votingSignatureList);
+        }
+        return votingSignatureList;
+    }
+
+    /**
+     * The state publishes the digest of each citizen list once the vote is initiated, a list already downloaded is not asked again. A downloaded
+     * list which does not match the digest is rejected.
+     */
+    public List<Citizen> getPollingStationCitizenList(final String pollingStationName, final StateService stateService) throws RemoteException, VoteException {
+        byte[] digest = stateService.getPollingStationCitizenListDigest(pollingStationName);
+        if (digest == null) {
+            // vote not initiated, the list may still change
+            return stateService.getPollingStationCitizenList(pollingStationName);
+        }
+        ByteBuffer key = ByteBuffer.wrap(digest);
+        List<Citizen> citizenList = citizenListByDigest.get(key);
+        if (citizenList == null) {
+            citizenList = stateService.getPollingStationCitizenList(pollingStationName);
+            byte[] citizenListDigest;
+            try {
+                citizenListDigest = CitizenListSnapshot.digest(citizenList);
+            } catch (IOException e) {
+                throw new RemoteException("Unable to hash citizen list of " + pollingStationName, e);
+            }
+            if (!MessageDigest.isEqual(digest, citizenListDigest)) {
+                // should report corruption of state
+                throw new VoteException("citizen list of " + pollingStationName + " does not match its digest");
+            }
+            citizenListByDigest.put(key, citizenList);
+        }
+        return citizenList;
+    }
+
+    private static VotingListSnapshot select(final VotingListSnapshot known, final VotingListSnapshot received, final String listName) throws VoteException {
+        if (received == null) {
+            // not modified
+            if (known == null) {
+                throw new VoteException(listName + " is not published yet");
+            }
+            return known;
+        }
+        if (!received.isValid()) {
+            // should report corruption of polling station
+            throw new VoteException(listName + " snapshot does not match its digest");
+        }
+        return received;
+    }
+
+}
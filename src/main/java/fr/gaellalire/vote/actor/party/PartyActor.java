@@ -16,7 +16,6 @@
 
 package fr.gaellalire.vote.actor.party;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -33,6 +32,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -50,17 +50,23 @@ import org.slf4j.LoggerFactory;
 import fr.gaellalire.vestige.spi.trust.TrustException;
 import fr.gaellalire.vote.Ballot;
 import fr.gaellalire.vote.actor.RemoteActor;
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
 import fr.gaellalire.vote.actor.party.jpa.Citizen;
-import fr.gaellalire.vote.actor.party.jpa.Judgment;
-import fr.gaellalire.vote.actor.party.jpa.Vote;
+import fr.gaellalire.vote.actor.party.jpa.ImportProgress;
+import fr.gaellalire.vote.actor.party.jpa.JudgmentTally;
+import fr.gaellalire.vote.actor.party.jpa.TallyCheckpoint;
+import fr.gaellalire.vote.actor.party.service.PartyResult;
 import fr.gaellalire.vote.actor.party.service.PartyService;
 import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
 import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.service.CitizenPage;
 import fr.gaellalire.vote.actor.state.service.PollingStation;
 import fr.gaellalire.vote.actor.state.service.StateService;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.SignatureVerifier;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.aes.AESUtils;
 import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
-import fr.gaellalire.vote.trust.rsa.RSAPublicPart;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 /**
@@ -73,92 +79,255 @@ public class PartyActor extends RemoteActor implements PartyService {
 
     private static final long serialVersionUID = 3900801952876087750L;
 
+    public static final int DEFAULT_CITIZEN_IMPORT_PAGE_SIZE = 1000;
+
     private StateService stateService;
 
-    private RSATrustSystem rsaTrustSystem;
+    private SignatureTrustSystem citizenTrustSystem;
+
+    private SignatureVerifier signatureVerifier;
 
     private String partyName;
 
+    private Map<BigInteger, Long> pollingStationIdByVotingModulus = new ConcurrentHashMap<BigInteger, Long>();
+
+    private Map<String, Object> pollingStationDataLockByName = new ConcurrentHashMap<String, Object>();
+
+    private VoteTally voteTally = new VoteTally();
+
+    private VoteWriter voteWriter;
+
+    private int citizenImportPageSize = DEFAULT_CITIZEN_IMPORT_PAGE_SIZE;
+
     protected PartyActor(final EntityManagerFactory entityManagerFactory, final RSAPrivatePart rsaPrivatePart, final String partyName, final StateService stateService,
-            final RSATrustSystem rsaTrustSystem) throws RemoteException {
+            final SignatureTrustSystem citizenTrustSystem) throws RemoteException {
         super(entityManagerFactory);
         this.stateService = stateService;
-        this.rsaTrustSystem = rsaTrustSystem;
+        this.citizenTrustSystem = citizenTrustSystem;
+        signatureVerifier = new SignatureVerifier(citizenTrustSystem);
         this.partyName = partyName;
+        voteWriter = new VoteWriter(this, voteTally, "party-" + partyName + "-vote-writer");
+    }
+
+    /**
+     * Start accepting votes, the tally must be loaded before.
+     */
+    public void start() {
+        voteWriter.start();
+    }
+
+    public void setVoteBatchPolicy(final int maxBatchSize, final long maxLatencyMillis) {
+        voteWriter.setMaxBatchSize(maxBatchSize);
+        voteWriter.setMaxLatencyMillis(maxLatencyMillis);
+    }
+
+    public void setTallyCheckpointInterval(final long checkpointIntervalMillis) {
+        voteWriter.setCheckpointIntervalMillis(checkpointIntervalMillis);
+    }
+
+    /**
+     * A vote not committed in time is rejected instead of blocking the caller.
+     */
+    public void setVoteCommitTimeout(final long commitTimeoutMillis) {
+        voteWriter.setCommitTimeoutMillis(commitTimeoutMillis);
+    }
+
+    public void setCitizenImportPageSize(final int citizenImportPageSize) {
+        this.citizenImportPageSize = citizenImportPageSize;
     }
 
+    /**
+     * Import the polling stations and the citizens of the state. Citizens are streamed page by page, each page is committed with the {@link ImportProgress}
+     * so a restarted party resumes after the last committed page.
+     */
     public void init() throws RemoteException {
+        EntityManager entityManager = getEntityManager();
         beginTransaction();
+        try {
+            ImportProgress importProgress = entityManager.find(ImportProgress.class, ImportProgress.ID);
+            if (importProgress == null) {
+                List<PollingStation> pollingStationList = stateService.getPollingStationList();
+                for (PollingStation pollingStation : pollingStationList) {
+
+                    fr.gaellalire.vote.actor.party.jpa.PollingStation pollingStationJPA = new fr.gaellalire.vote.actor.party.jpa.PollingStation(pollingStation.getName(),
+                            pollingStation.getPublicKeyModulusSha512());
+                    entityManager.persist(pollingStationJPA);
+                }
+                importProgress = new ImportProgress(0);
+                entityManager.persist(importProgress);
+            }
+            commit();
+            if (importProgress.isCompleted()) {
+                return;
+            }
+            long afterId = importProgress.getLastAfterId();
+            if (afterId != 0) {
+                LOGGER.info("Resume citizen import after {}", afterId);
+            }
+            entityManager.clear();
+
+            Map<String, Long> pollingStationIdByName = getPollingStationIdByName();
+            long citizenCount = 0;
+            CitizenPage citizenPage;
+            do {
+                citizenPage = stateService.getCitizenPage(afterId, citizenImportPageSize);
+                beginTransaction();
+                for (fr.gaellalire.vote.actor.state.service.Citizen citizen : citizenPage.getCitizens()) {
+                    Long pollingStationId = pollingStationIdByName.get(citizen.getPollingStationName());
+                    if (pollingStationId == null) {
+                        throw new RemoteException("Unknown polling station " + citizen.getPollingStationName());
+                    }
+                    Citizen citizenEntity = new Citizen();
+                    citizenEntity.setPollingStation(entityManager.getReference(fr.gaellalire.vote.actor.party.jpa.PollingStation.class, pollingStationId));
+                    citizenEntity.setPublicKeyModulus(citizen.getPublicKeyModulus());
+                    citizenEntity.setSSNumber(citizen.getSsNumber());
+                    entityManager.persist(citizenEntity);
+                }
+                afterId = citizenPage.getNextAfterId();
+                importProgress = entityManager.find(ImportProgress.class, ImportProgress.ID);
+                importProgress.setLastAfterId(afterId);
+                importProgress.setCompleted(citizenPage.isLast());
+                // inserts are sent by JDBC batch at flush, clear to keep the persistence context small
+                entityManager.flush();
+                commit();
+                entityManager.clear();
+                citizenCount += citizenPage.getCitizens().size();
+            } while (!citizenPage.isLast());
+            LOGGER.info("{} citizens imported", citizenCount);
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                rollback();
+            }
+        }
+    }
+
+    private Map<String, Long> getPollingStationIdByName() {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<fr.gaellalire.vote.actor.party.jpa.PollingStation> rootPollingStation = query.from(fr.gaellalire.vote.actor.party.jpa.PollingStation.class);
 
-        List<PollingStation> pollingStationList = stateService.getPollingStationList();
-        for (PollingStation pollingStation : pollingStationList) {
+        query.multiselect(rootPollingStation.get("name"), rootPollingStation.get("id"));
 
-            fr.gaellalire.vote.actor.party.jpa.PollingStation pollingStationJPA = new fr.gaellalire.vote.actor.party.jpa.PollingStation(pollingStation.getName(),
-                    pollingStation.getPublicKeyModulusSha512());
-            getEntityManager().persist(pollingStationJPA);
+        Map<String, Long> pollingStationIdByName = new HashMap<String, Long>();
+        for (Object[] row : entityManager.createQuery(query).getResultList()) {
+            pollingStationIdByName.put((String) row[0], (Long) row[1]);
         }
+        return pollingStationIdByName;
+    }
 
-        List<fr.gaellalire.vote.actor.state.service.Citizen> citizenList = stateService.getCitizenList();
-        for (fr.gaellalire.vote.actor.state.service.Citizen citizen : citizenList) {
-            Citizen citizenEntity = new Citizen();
-            citizenEntity.setPollingStation(getPollingStationByName(citizen.getPollingStationName()));
-            citizenEntity.setPublicKeyModulus(citizen.getPublicKeyModulus());
-            citizenEntity.setSSNumber(citizen.getSsNumber());
-            getEntityManager().persist(citizenEntity);
-        }
+    /**
+     * Rebuild the voting modulus index from the polling station lists already saved.
+     */
+    public void loadVotingModulusIndex() {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<fr.gaellalire.vote.actor.party.jpa.PollingStation> rootPollingStation = query.from(fr.gaellalire.vote.actor.party.jpa.PollingStation.class);
 
-        commit();
+        query.multiselect(rootPollingStation.get("id"), rootPollingStation.join("modulus"));
+
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+        for (Object[] row : typedQuery.getResultList()) {
+            pollingStationIdByVotingModulus.put(new BigInteger((String) row[1], 16), (Long) row[0]);
+        }
+        LOGGER.info("{} voting modulus indexed", pollingStationIdByVotingModulus.size());
     }
 
-    @Override
-    public void vote(final BigInteger votePublicModulus, final Ballot ballot, final byte[] ballotSignature) throws RemoteException {
+    /**
+     * Restore the tally from the last checkpoint and count the votes committed after it.
+     */
+    public void loadTally() {
         EntityManager entityManager = getEntityManager();
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<fr.gaellalire.vote.actor.party.jpa.PollingStation> query = criteriaBuilder.createQuery(fr.gaellalire.vote.actor.party.jpa.PollingStation.class);
-        Root<fr.gaellalire.vote.actor.party.jpa.PollingStation> rootPollingStation = query.from(fr.gaellalire.vote.actor.party.jpa.PollingStation.class);
-        ParameterExpression<String> votePublicModulusParameter = criteriaBuilder.parameter(String.class, "votePublicModulus");
+        long lastVoteId = 0;
+        TallyCheckpoint tallyCheckpoint = entityManager.find(TallyCheckpoint.class, TallyCheckpoint.ID);
+        if (tallyCheckpoint != null) {
+            lastVoteId = tallyCheckpoint.getLastVoteId();
+            CriteriaQuery<JudgmentTally> tallyQuery = criteriaBuilder.createQuery(JudgmentTally.class);
+            tallyQuery.select(tallyQuery.from(JudgmentTally.class));
+            for (JudgmentTally judgmentTally : entityManager.createQuery(tallyQuery).getResultList()) {
+                voteTally.add(judgmentTally.getIndice(), judgmentTally.getValue(), judgmentTally.getNumber());
+            }
+        }
+
+        CriteriaQuery<VoteResult> query = criteriaBuilder.createQuery(VoteResult.class);
+        Root<fr.gaellalire.vote.actor.party.jpa.Judgment> rootJudgment = query.from(fr.gaellalire.vote.actor.party.jpa.Judgment.class);
+        ParameterExpression<Long> lastVoteIdParameter = criteriaBuilder.parameter(Long.class, "lastVoteId");
 
-        query.select(rootPollingStation).where(criteriaBuilder.equal(rootPollingStation.join("modulus"), votePublicModulusParameter));
+        query.multiselect(rootJudgment.get("indice"), rootJudgment.get("value"), criteriaBuilder.count(rootJudgment));
+        query.where(criteriaBuilder.gt(rootJudgment.get("vote").<Long> get("id"), lastVoteIdParameter));
+        query.groupBy(rootJudgment.get("indice"), rootJudgment.get("value"));
 
-        TypedQuery<fr.gaellalire.vote.actor.party.jpa.PollingStation> typedQuery = getEntityManager().createQuery(query);
-        typedQuery.setParameter("votePublicModulus", votePublicModulus.toString(16));
-        fr.gaellalire.vote.actor.party.jpa.PollingStation pollingStation = typedQuery.getSingleResult();
-        entityManager.refresh(pollingStation);
+        TypedQuery<VoteResult> typedQuery = entityManager.createQuery(query);
+        typedQuery.setParameter("lastVoteId", lastVoteId);
+        for (VoteResult voteResult : typedQuery.getResultList()) {
+            voteTally.add(voteResult.getIndice(), voteResult.getJudgment().ordinal(), voteResult.getNumber());
+        }
+
+        CriteriaQuery<Long> maxVoteIdQuery = criteriaBuilder.createQuery(Long.class);
+        maxVoteIdQuery.select(criteriaBuilder.max(maxVoteIdQuery.from(fr.gaellalire.vote.actor.party.jpa.Vote.class).<Long> get("id")));
+        Long maxVoteId = entityManager.createQuery(maxVoteIdQuery).getSingleResult();
+        if (maxVoteId != null && maxVoteId.longValue() > lastVoteId) {
+            lastVoteId = maxVoteId.longValue();
+        }
+        voteWriter.setLastVoteId(lastVoteId);
+        LOGGER.info("Tally restored up to vote {}", lastVoteId);
+    }
+
+    @Override
+    public void vote(final BigInteger votePublicModulus, final Ballot ballot, final byte[] ballotSignature) throws RemoteException {
+        Long pollingStationId = pollingStationIdByVotingModulus.get(votePublicModulus);
+        if (pollingStationId == null) {
+            throw new RemoteException("Unknown voting modulus");
+        }
 
         byte[] encoded = ballot.getEncoded();
         try {
-            if (!rsaTrustSystem.publicPartByModulus(votePublicModulus).verify(new ByteArrayInputStream(encoded), new ByteArrayInputStream(ballotSignature))) {
+            if (!citizenTrustSystem.publicPartByKey(votePublicModulus).verify(encoded, ballotSignature)) {
                 throw new RemoteException("Invalid signature");
             }
         } catch (TrustException e) {
             throw new RemoteException("Invalid signature", e);
         }
 
-        beginTransaction();
-
-        Vote vote = new Vote();
-        vote.setPollingStation(pollingStation);
-        vote.setPublicKeyModulus(votePublicModulus);
-        getEntityManager().persist(vote);
-
-        int indice = 0;
-        for (fr.gaellalire.vote.Judgment judgment : ballot.getJudgments()) {
-            Judgment e = new Judgment();
-            e.setVote(vote);
-            e.setIndice(indice);
-            e.setValue(judgment.ordinal());
-            getEntityManager().persist(e);
-            indice++;
-        }
-
-        commit();
+        // the signature is checked by the calling thread, the writer thread only persists
+        voteWriter.write(pollingStationId, votePublicModulus, ballot.getJudgments());
+    }
 
+    /**
+     * Create a started party which is not bound to any registry.
+     */
+    public static PartyActor create(final EntityManagerFactory entityManagerFactory, final RSAPrivatePart rsaPrivatePart, final String partyName,
+            final StateService stateService, final SignatureTrustSystem citizenTrustSystem) throws RemoteException {
+        PartyActor partyActor = new PartyActor(entityManagerFactory, rsaPrivatePart, partyName, stateService, citizenTrustSystem);
+        partyActor.loadVotingModulusIndex();
+        partyActor.loadTally();
+        partyActor.start();
+        return partyActor;
     }
 
     public static PartyActor create(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final String stateHost, final String host, final String partyName,
             final File privateKeyFile, final Map<String, String> entityManagerProperties) throws Exception {
+        return create(rsaTrustSystem, aesUtils, stateHost, host, partyName, privateKeyFile, entityManagerProperties, null);
+    }
+
+    public static PartyActor create(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final String stateHost, final String host, final String partyName,
+            final File privateKeyFile, final Map<String, String> entityManagerProperties, final RMIOverrides rmiOverrides) throws Exception {
+        return create(rsaTrustSystem, rsaTrustSystem, aesUtils, stateHost, host, partyName, privateKeyFile, entityManagerProperties, rmiOverrides);
+    }
+
+    /**
+     * @param citizenTrustSystem trust system of the citizen and voting keys, the party key is always RSA
+     */
+    public static PartyActor create(final RSATrustSystem rsaTrustSystem, final SignatureTrustSystem citizenTrustSystem, final AESUtils aesUtils, final String stateHost,
+            final String host, final String partyName, final File privateKeyFile, final Map<String, String> entityManagerProperties, final RMIOverrides rmiOverrides)
+            throws Exception {
 
         StateService stateService = null;
+        if (rmiOverrides != null) {
+            stateService = rmiOverrides.getStateService();
+        }
         if (stateService == null) {
             Registry registry = LocateRegistry.getRegistry(stateHost);
             stateService = (StateService) registry.lookup("State");
@@ -194,9 +363,11 @@ public class PartyActor extends RemoteActor implements PartyService {
 
         }
 
-        PartyActor partyActor = new PartyActor(entityManagerFactory, rsaPrivatePart, partyName, stateService, rsaTrustSystem);
-        Registry registry = LocateRegistry.getRegistry(host);
-        registry.rebind("Party" + partyName, partyActor);
+        PartyActor partyActor = create(entityManagerFactory, rsaPrivatePart, partyName, stateService, citizenTrustSystem);
+        if (rmiOverrides == null || !rmiOverrides.bind("Party" + partyName, partyActor)) {
+            Registry registry = LocateRegistry.getRegistry(host);
+            registry.rebind("Party" + partyName, partyActor);
+        }
         return partyActor;
     }
 
@@ -208,7 +379,7 @@ public class PartyActor extends RemoteActor implements PartyService {
         String partyName = args[argPos++];
         String privateKeyFileName = args[argPos++];
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
         AESUtils aesUtils = new AESUtils(random);
 
@@ -241,9 +412,19 @@ public class PartyActor extends RemoteActor implements PartyService {
 
     @Override
     public void setPollingStationData(final String pollingStationName, final VotingModulusList votingModulusList, final VotingSignatureList signatureList) throws RemoteException {
-        fr.gaellalire.vote.actor.party.jpa.PollingStation pollingStation = getPollingStationByName(pollingStationName);
+        Object lock = pollingStationDataLockByName.computeIfAbsent(pollingStationName, name -> new Object());
+        // a polling station whose call timed out sends its data again, maybe while the first call is still saving it
+        synchronized (lock) {
+            savePollingStationData(pollingStationName, votingModulusList, signatureList);
+        }
+    }
 
-        byte[] encoded = votingModulusList.getEncoded();
+    private void savePollingStationData(final String pollingStationName, final VotingModulusList votingModulusList, final VotingSignatureList signatureList) {
+        fr.gaellalire.vote.actor.party.jpa.PollingStation pollingStation = getPollingStationByName(pollingStationName);
+        if (!pollingStation.getModulus().isEmpty()) {
+            // already saved, the polling station sends its data again when it did not get our answer
+            return;
+        }
 
         Map<String, byte[]> signatureBySSNumber = signatureList.getSignatureBySSNumber();
 
@@ -253,40 +434,49 @@ public class PartyActor extends RemoteActor implements PartyService {
             return;
         }
 
-        beginTransaction();
-
+        List<BigInteger> citizenModulus = new ArrayList<BigInteger>(citizens.size());
+        List<byte[]> signatures = new ArrayList<byte[]>(citizens.size());
         for (Citizen citizen : citizens) {
-            String ssNumber = citizen.getSSNumber();
-            byte[] signature = signatureBySSNumber.get(ssNumber);
+            byte[] signature = signatureBySSNumber.get(citizen.getSSNumber());
             if (signature == null) {
                 // invalid list
-                rollback();
                 return;
             }
-            RSAPublicPart rsaPublicPart = rsaTrustSystem.publicPartByModulus(citizen.getPublicKeyModulus());
-            try {
-                if (!rsaPublicPart.verify(new ByteArrayInputStream(encoded), new ByteArrayInputStream(signature))) {
-                    // invalid list
-                    rollback();
-                    return;
-                }
-            } catch (TrustException e) {
+            citizenModulus.add(citizen.getPublicKeyModulus());
+            signatures.add(signature);
+        }
+
+        try {
+            if (!signatureVerifier.verifyAllDigest(votingModulusList.getSha512(), citizenModulus, signatures)) {
                 // invalid list
-                rollback();
                 return;
             }
-            citizen.setPollingStationModulusListSignature(signature);
+        } catch (TrustException e) {
+            // invalid list
+            return;
+        }
+
+        beginTransaction();
+
+        for (int i = 0; i < citizens.size(); i++) {
+            citizens.get(i).setPollingStationModulusListSignature(signatures.get(i));
         }
 
         // list is signed by all citizen of pollingStation, we can save it
 
         List<String> modulus = pollingStation.getModulus();
-        for (BigInteger bigInteger : votingModulusList.getModulus()) {
-            modulus.add(bigInteger.toString(16));
+        for (int i = 0; i < votingModulusList.size(); i++) {
+            modulus.add(votingModulusList.getModulusHex(i));
         }
 
         commit();
 
+        // ballots of this polling station can now be accepted
+        long pollingStationId = pollingStation.getId();
+        for (BigInteger bigInteger : votingModulusList.getModulus()) {
+            pollingStationIdByVotingModulus.put(bigInteger, pollingStationId);
+        }
+
     }
 
     public PartyResult getPartyResult(final int currentIndice, final List<VoteResult> currentIndiceVoteResults, final long currentIndiceTotalNumber) {
@@ -313,32 +503,20 @@ public class PartyActor extends RemoteActor implements PartyService {
         return new PartyResult(currentIndice, judgment, plus, percentPlus, percentMinus);
     }
 
-    public void endVote() {
-        // 1) send votes to state (maybe a big ZIP in future)
-        // 2) state will send us the vote we did not have (using our vote method), we will check their validity as if it was a citizen
-
-        // 3) then calculate the result
-
-        EntityManager entityManager = getEntityManager();
-        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<VoteResult> query = criteriaBuilder.createQuery(VoteResult.class);
-        Root<fr.gaellalire.vote.actor.party.jpa.Judgment> rootJudgment = query.from(fr.gaellalire.vote.actor.party.jpa.Judgment.class);
-
-        query.multiselect(rootJudgment.get("indice"), rootJudgment.get("value"), criteriaBuilder.count(rootJudgment));
-        query.groupBy(rootJudgment.get("indice"), rootJudgment.get("value"));
-        query.orderBy(criteriaBuilder.asc(rootJudgment.get("indice")), criteriaBuilder.asc(rootJudgment.get("value")));
-
-        TypedQuery<VoteResult> typedQuery = getEntityManager().createQuery(query);
-
-        List<VoteResult> resultList = typedQuery.getResultList();
+    @Override
+    public List<PartyResult> getInterimResults() {
+        List<VoteResult> resultList = voteTally.getVoteResults();
         int currentIndice = 0;
         long currentIndiceNumber = 0;
         List<PartyResult> partyResults = new ArrayList<PartyResult>();
         List<VoteResult> currentIndiceVoteResults = new ArrayList<VoteResult>();
-        LOGGER.info("{}", resultList);
+        LOGGER.debug("{}", resultList);
         for (VoteResult voteResult : resultList) {
             if (currentIndice != voteResult.getIndice()) {
-                partyResults.add(getPartyResult(currentIndice, currentIndiceVoteResults, currentIndiceNumber));
+                // a party without any vote has no judgment yet, it is not listed
+                if (!currentIndiceVoteResults.isEmpty()) {
+                    partyResults.add(getPartyResult(currentIndice, currentIndiceVoteResults, currentIndiceNumber));
+                }
                 currentIndiceVoteResults.clear();
                 currentIndiceNumber = 0;
                 currentIndice = voteResult.getIndice();
@@ -346,9 +524,22 @@ public class PartyActor extends RemoteActor implements PartyService {
             currentIndiceVoteResults.add(voteResult);
             currentIndiceNumber += voteResult.getNumber();
         }
-        partyResults.add(getPartyResult(currentIndice, currentIndiceVoteResults, currentIndiceNumber));
+        if (!currentIndiceVoteResults.isEmpty()) {
+            partyResults.add(getPartyResult(currentIndice, currentIndiceVoteResults, currentIndiceNumber));
+        }
         Collections.sort(partyResults);
+        return partyResults;
+    }
+
+    public List<PartyResult> endVote() {
+        // 1) send votes to state (maybe a big ZIP in future)
+        // 2) state will send us the vote we did not have (using our vote method), we will check their validity as if it was a citizen
+
+        // 3) then calculate the result, votes are counted as they are committed
+
+        List<PartyResult> partyResults = getInterimResults();
         LOGGER.info("{}", partyResults);
+        return partyResults;
     }
 
     @Override
@@ -356,4 +547,10 @@ public class PartyActor extends RemoteActor implements PartyService {
         return partyName;
     }
 
+    @Override
+    public void close() {
+        voteWriter.close();
+        super.close();
+    }
+
 }
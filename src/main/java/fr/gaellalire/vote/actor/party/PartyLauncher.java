@@ -29,6 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fr.gaellalire.vote.AbstractLauncher;
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.transport.WireRMIOverrides;
+import fr.gaellalire.vote.transport.WireServer;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.aes.AESUtils;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
@@ -69,7 +73,7 @@ public class PartyLauncher extends AbstractLauncher implements Callable<Void> {
 
         Properties properties = loadProperties("party.properties");
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
         AESUtils aesUtils = new AESUtils(random);
@@ -79,9 +83,25 @@ public class PartyLauncher extends AbstractLauncher implements Callable<Void> {
         String partyName = properties.getProperty("name");
         File privateKeyFile = new File(data, "ps.key");
 
+        WireServer wireServer = createWireServer(properties);
+        RMIOverrides rmiOverrides = null;
+        String host = properties.getProperty("host");
+        if (wireServer != null) {
+            host = host + ":" + wireServer.getPort();
+            rmiOverrides = createWireRMIOverrides(properties, properties.getProperty("stateHost"), wireServer);
+        }
+
         LOGGER.info("Creating party {}", partyName);
-        PartyActor partyActor = PartyActor.create(rsaTrustSystem, aesUtils, properties.getProperty("stateHost"), properties.getProperty("host"), partyName, privateKeyFile,
-                entityManagerProperties);
+        PartyActor partyActor;
+        try {
+            partyActor = PartyActor.create(rsaTrustSystem, createCitizenTrustSystem(properties, rsaTrustSystem, random), aesUtils, properties.getProperty("stateHost"),
+                    host, partyName, privateKeyFile, entityManagerProperties, rmiOverrides);
+        } catch (Exception e) {
+            if (wireServer != null) {
+                wireServer.close();
+            }
+            throw e;
+        }
 
         // all polling station and citizen must be known by state when started
         long until;
@@ -93,6 +113,12 @@ public class PartyLauncher extends AbstractLauncher implements Callable<Void> {
             until = Long.parseLong(property);
         }
 
+        partyActor.setVoteBatchPolicy(Integer.parseInt(properties.getProperty("vote.maxBatchSize", String.valueOf(VoteWriter.DEFAULT_MAX_BATCH_SIZE))),
+                Long.parseLong(properties.getProperty("vote.maxLatency", String.valueOf(VoteWriter.DEFAULT_MAX_LATENCY))));
+        partyActor.setCitizenImportPageSize(Integer.parseInt(properties.getProperty("init.pageSize", String.valueOf(PartyActor.DEFAULT_CITIZEN_IMPORT_PAGE_SIZE))));
+        partyActor.setTallyCheckpointInterval(Long.parseLong(properties.getProperty("vote.tallyCheckpointInterval", String.valueOf(VoteWriter.DEFAULT_CHECKPOINT_INTERVAL))));
+        partyActor.setVoteCommitTimeout(Long.parseLong(properties.getProperty("vote.commitTimeout", String.valueOf(VoteWriter.DEFAULT_COMMIT_TIMEOUT))));
+
         LOGGER.info("Party created");
         try {
             if (waitForInterruption(until)) {
@@ -114,6 +140,9 @@ public class PartyLauncher extends AbstractLauncher implements Callable<Void> {
             }
         } finally {
             partyActor.close();
+            if (wireServer != null) {
+                wireServer.close();
+            }
         }
 
     }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.party;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.gaellalire.vote.Judgment;
+
+/**
+ * In memory count of committed judgments, by candidate indice and judgment value.
+ * @author Gael Lalire
+ */
+public class VoteTally {
+
+    private static final int JUDGMENT_COUNT = Judgment.values().length;
+
+    private ConcurrentMap<Integer, LongAdder[]> countersByIndice = new ConcurrentHashMap<Integer, LongAdder[]>();
+
+    private LongAdder[] getCounters(final int indice) {
+        LongAdder[] counters = countersByIndice.get(indice);
+        if (counters == null) {
+            counters = new LongAdder[JUDGMENT_COUNT];
+            for (int i = 0; i < JUDGMENT_COUNT; i++) {
+                counters[i] = new LongAdder();
+            }
+            LongAdder[] previous = countersByIndice.putIfAbsent(indice, counters);
+            if (previous != null) {
+                counters = previous;
+            }
+        }
+        return counters;
+    }
+
+    public void add(final Judgment[] judgments) {
+        for (int indice = 0; indice < judgments.length; indice++) {
+            getCounters(indice)[judgments[indice].ordinal()].increment();
+        }
+    }
+
+    public void add(final int indice, final int value, final long number) {
+        getCounters(indice)[value].add(number);
+    }
+
+    /**
+     * Same content as the GROUP BY indice, value on judgments : ordered by indice then value, without empty counts.
+     */
+    public List<VoteResult> getVoteResults() {
+        Map<Integer, LongAdder[]> sortedCounters = new TreeMap<Integer, LongAdder[]>(countersByIndice);
+        List<VoteResult> voteResults = new ArrayList<VoteResult>(sortedCounters.size() * JUDGMENT_COUNT);
+        for (Map.Entry<Integer, LongAdder[]> entry : sortedCounters.entrySet()) {
+            LongAdder[] counters = entry.getValue();
+            for (int value = 0; value < JUDGMENT_COUNT; value++) {
+                long number = counters[value].sum();
+                if (number != 0) {
+                    voteResults.add(new VoteResult(entry.getKey(), value, number));
+                }
+            }
+        }
+        return voteResults;
+    }
+
+}
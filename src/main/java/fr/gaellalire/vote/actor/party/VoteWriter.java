@@ -0,0 +1,319 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.party;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.gaellalire.vote.actor.RemoteActor;
+import fr.gaellalire.vote.actor.party.jpa.Judgment;
+import fr.gaellalire.vote.actor.party.jpa.JudgmentTally;
+import fr.gaellalire.vote.actor.party.jpa.PollingStation;
+import fr.gaellalire.vote.actor.party.jpa.TallyCheckpoint;
+import fr.gaellalire.vote.actor.party.jpa.Vote;
+
+/**
+ * Group commit of votes. Callers enqueue their (already verified) vote and wait, a single writer thread persists the votes by batch in one
+ * transaction. A batch is written when it reaches maxBatchSize or when its first vote waited maxLatencyMillis. Committed votes are counted in the
+ * {@link VoteTally} which is saved every checkpointIntervalMillis.
+ * @author Gael Lalire
+ */
+public class VoteWriter implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VoteWriter.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    public static final long DEFAULT_MAX_LATENCY = 10;
+
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+    public static final long DEFAULT_COMMIT_TIMEOUT = 30000;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static class PendingVote {
+
+        private long pollingStationId;
+
+        private BigInteger publicKeyModulus;
+
+        private fr.gaellalire.vote.Judgment[] judgments;
+
+        private CompletableFuture<Void> durable = new CompletableFuture<Void>();
+
+        PendingVote(final long pollingStationId, final BigInteger publicKeyModulus, final fr.gaellalire.vote.Judgment[] judgments) {
+            this.pollingStationId = pollingStationId;
+            this.publicKeyModulus = publicKeyModulus;
+            this.judgments = judgments;
+        }
+
+    }
+
+    private RemoteActor remoteActor;
+
+    private VoteTally voteTally;
+
+    private BlockingQueue<PendingVote> queue = new LinkedBlockingQueue<PendingVote>();
+
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private volatile long maxLatencyMillis = DEFAULT_MAX_LATENCY;
+
+    private volatile long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private volatile long commitTimeoutMillis = DEFAULT_COMMIT_TIMEOUT;
+
+    private volatile boolean closed;
+
+    /**
+     * Set by the writer thread when it stops, queued votes are not written anymore.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Only accessed by the writer thread once started. Votes are persisted by this single thread so their ids increase with their commit
+     * order.
+     */
+    private long lastVoteId;
+
+    private long lastCheckpointVoteId;
+
+    private long lastCheckpointTime = System.nanoTime();
+
+    private Thread thread;
+
+    public VoteWriter(final RemoteActor remoteActor, final VoteTally voteTally, final String name) {
+        this.remoteActor = remoteActor;
+        this.voteTally = voteTally;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    public void setMaxBatchSize(final int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setMaxLatencyMillis(final long maxLatencyMillis) {
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    public void setCheckpointIntervalMillis(final long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public void setCommitTimeoutMillis(final long commitTimeoutMillis) {
+        this.commitTimeoutMillis = commitTimeoutMillis;
+    }
+
+    /**
+     * Must be called before {@link #start()}, with the id of the last vote already counted in the tally.
+     */
+    public void setLastVoteId(final long lastVoteId) {
+        this.lastVoteId = lastVoteId;
+        lastCheckpointVoteId = lastVoteId;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Return when the vote is committed.
+     */
+    public void write(final long pollingStationId, final BigInteger publicKeyModulus, final fr.gaellalire.vote.Judgment[] judgments) throws RemoteException {
+        if (closed || stopped) {
+            throw new RemoteException("Party is closed");
+        }
+        PendingVote pendingVote = new PendingVote(pollingStationId, publicKeyModulus, judgments);
+        queue.add(pendingVote);
+        // the writer may have stopped after the check, if its final drain missed our vote nobody else will complete it
+        if (stopped && queue.remove(pendingVote)) {
+            throw new RemoteException("Party is closed");
+        }
+        try {
+            pendingVote.durable.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for vote commit", e);
+        } catch (ExecutionException e) {
+            throw new RemoteException("Unable to save vote", e.getCause());
+        } catch (TimeoutException e) {
+            if (queue.remove(pendingVote)) {
+                throw new RemoteException("Vote not committed in " + commitTimeoutMillis + " ms", e);
+            }
+            throw new RemoteException("Vote not committed in " + commitTimeoutMillis + " ms, it may still be saved", e);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<PendingVote> batch = new ArrayList<PendingVote>();
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+                int batchSize = maxBatchSize;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingVote pendingVote = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (pendingVote == null) {
+                        break;
+                    }
+                    batch.add(pendingVote);
+                }
+                writeBatch(batch);
+                batch.clear();
+                if (System.nanoTime() - lastCheckpointTime >= TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMillis)) {
+                    try {
+                        checkpoint();
+                    } catch (RuntimeException e) {
+                        // votes are committed, only the checkpoint is late : retry at next interval
+                        LOGGER.error("Unable to save tally checkpoint, retrying in {} ms", checkpointIntervalMillis, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            LOGGER.error("Vote writer failed, votes are not accepted anymore", e);
+        } finally {
+            stopped = true;
+            queue.drainTo(batch);
+            for (PendingVote pendingVote : batch) {
+                pendingVote.durable.completeExceptionally(new IllegalStateException("Party is closed"));
+            }
+            try {
+                checkpoint();
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to save tally checkpoint, it will be rebuilt from votes", e);
+            }
+            remoteActor.closeEntityManager();
+        }
+    }
+
+    private void writeBatch(final List<PendingVote> batch) {
+        try {
+            persist(batch);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Batch of {} votes failed, retrying one by one", batch.size(), e);
+            // one invalid vote (a vote already received for instance) must not reject the others
+            for (PendingVote pendingVote : batch) {
+                try {
+                    persist(Collections.singletonList(pendingVote));
+                } catch (RuntimeException e2) {
+                    pendingVote.durable.completeExceptionally(e2);
+                }
+            }
+        }
+    }
+
+    private void persist(final List<PendingVote> pendingVotes) {
+        EntityManager entityManager = remoteActor.getEntityManager();
+        long maxVoteId = lastVoteId;
+        remoteActor.beginTransaction();
+        try {
+            for (PendingVote pendingVote : pendingVotes) {
+                Vote vote = new Vote();
+                vote.setPollingStation(entityManager.getReference(PollingStation.class, pendingVote.pollingStationId));
+                vote.setPublicKeyModulus(pendingVote.publicKeyModulus);
+                entityManager.persist(vote);
+
+                int indice = 0;
+                for (fr.gaellalire.vote.Judgment judgment : pendingVote.judgments) {
+                    Judgment e = new Judgment();
+                    e.setVote(vote);
+                    e.setIndice(indice);
+                    e.setValue(judgment.ordinal());
+                    entityManager.persist(e);
+                    indice++;
+                }
+                maxVoteId = Math.max(maxVoteId, vote.getId());
+            }
+            remoteActor.commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                remoteActor.rollback();
+            }
+            entityManager.clear();
+        }
+        lastVoteId = maxVoteId;
+        for (PendingVote pendingVote : pendingVotes) {
+            voteTally.add(pendingVote.judgments);
+            pendingVote.durable.complete(null);
+        }
+    }
+
+    /**
+     * Save the tally with the id of the last counted vote, so that a restart only counts the votes committed since.
+     */
+    private void checkpoint() {
+        lastCheckpointTime = System.nanoTime();
+        if (lastVoteId == lastCheckpointVoteId) {
+            return;
+        }
+        EntityManager entityManager = remoteActor.getEntityManager();
+        remoteActor.beginTransaction();
+        try {
+            for (VoteResult voteResult : voteTally.getVoteResults()) {
+                entityManager.merge(new JudgmentTally(voteResult.getIndice(), voteResult.getJudgment().ordinal(), voteResult.getNumber()));
+            }
+            entityManager.merge(new TallyCheckpoint(lastVoteId));
+            remoteActor.commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                remoteActor.rollback();
+            }
+            entityManager.clear();
+        }
+        lastCheckpointVoteId = lastVoteId;
+        LOGGER.debug("Tally checkpoint at vote {}", lastVoteId);
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.party.jpa;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Single row table : the citizens of the state pages up to lastAfterId are imported, committed with them so an interrupted import resumes after the last
+ * committed page.
+ * @author Gael Lalire
+ */
+@Entity
+@Table
+public class ImportProgress {
+
+    public static final long ID = 1;
+
+    @Id
+    private long id;
+
+    private long lastAfterId;
+
+    private boolean completed;
+
+    public ImportProgress() {
+    }
+
+    public ImportProgress(final long lastAfterId) {
+        id = ID;
+        this.lastAfterId = lastAfterId;
+    }
+
+    public long getLastAfterId() {
+        return lastAfterId;
+    }
+
+    public void setLastAfterId(final long lastAfterId) {
+        this.lastAfterId = lastAfterId;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(final boolean completed) {
+        this.completed = completed;
+    }
+
+}
@@ -21,6 +21,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 /**
@@ -31,7 +32,8 @@ import javax.persistence.Table;
 public class Judgment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "judgment_sequence")
+    @SequenceGenerator(name = "judgment_sequence", sequenceName = "judgment_sequence", allocationSize = 500)
     private long id;
 
     @ManyToOne(optional = false)
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.party.jpa;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Number of judgments of a given value for a candidate, as of the last {@link TallyCheckpoint}.
+ * @author Gael Lalire
+ */
+@Entity
+@Table
+public class JudgmentTally {
+
+    @EmbeddedId
+    private JudgmentTallyId primaryKey;
+
+    private long number;
+
+    public JudgmentTally() {
+    }
+
+    public JudgmentTally(final int indice, final int value, final long number) {
+        primaryKey = new JudgmentTallyId(indice, value);
+        this.number = number;
+    }
+
+    public int getIndice() {
+        return primaryKey.getIndice();
+    }
+
+    public int getValue() {
+        return primaryKey.getValue();
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.party.jpa;
+
+import java.io.Serializable;
+
+import javax.persistence.Embeddable;
+
+/**
+ * @author Gael Lalire
+ */
+@Embeddable
+public class JudgmentTallyId implements Serializable {
+
+    private static final long serialVersionUID = 6400473339016738367L;
+
+    private int indice;
+
+    private int value;
+
+    public JudgmentTallyId() {
+    }
+
+    public JudgmentTallyId(final int indice, final int value) {
+        this.indice = indice;
+        this.value = value;
+    }
+
+    public int getIndice() {
+        return indice;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + indice;
+        result = prime * result + value;
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof JudgmentTallyId)) {
+            return false;
+        }
+        JudgmentTallyId other = (JudgmentTallyId) obj;
+        return indice == other.indice && value == other.value;
+    }
+
+}
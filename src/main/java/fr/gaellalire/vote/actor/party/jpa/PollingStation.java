@@ -61,6 +61,10 @@ public class PollingStation {
         this.publicKeyModulusSha512 = publicKeyModulusSha512;
     }
 
+    public long getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
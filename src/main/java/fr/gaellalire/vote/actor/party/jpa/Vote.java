@@ -26,6 +26,7 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 /**
@@ -36,7 +37,8 @@ import javax.persistence.Table;
 public class Vote {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vote_sequence")
+    @SequenceGenerator(name = "vote_sequence", sequenceName = "vote_sequence", allocationSize = 500)
     private long id;
 
     @ManyToOne(optional = false)
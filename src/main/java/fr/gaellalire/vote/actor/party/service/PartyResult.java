@@ -14,14 +14,18 @@
  * limitations under the License.
  */
 
-package fr.gaellalire.vote.actor.party;
+package fr.gaellalire.vote.actor.party.service;
+
+import java.io.Serializable;
 
 import fr.gaellalire.vote.Judgment;
 
 /**
  * @author Gael Lalire
  */
-public class PartyResult implements Comparable<PartyResult> {
+public class PartyResult implements Comparable<PartyResult>, Serializable {
+
+    private static final long serialVersionUID = -3305290779713575126L;
 
     private int partyNumber;
 
@@ -41,6 +45,26 @@ public class PartyResult implements Comparable<PartyResult> {
         this.percentMinus = percentMinus;
     }
 
+    public int getPartyNumber() {
+        return partyNumber;
+    }
+
+    public Judgment getJudgment() {
+        return judgment;
+    }
+
+    public boolean isPlus() {
+        return plus;
+    }
+
+    public double getPercentPlus() {
+        return percentPlus;
+    }
+
+    public double getPercentMinus() {
+        return percentMinus;
+    }
+
     @Override
     public int compareTo(final PartyResult o) {
         // https://scienceetonnante.com/2016/10/21/reformons-lelection-presidentielle/
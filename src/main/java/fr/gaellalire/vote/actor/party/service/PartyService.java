@@ -19,6 +19,7 @@ package fr.gaellalire.vote.actor.party.service;
 import java.math.BigInteger;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 import fr.gaellalire.vote.Ballot;
 import fr.gaellalire.vote.RequireAnonymousNetwork;
@@ -37,4 +38,9 @@ public interface PartyService extends Remote {
     @RequireAnonymousNetwork
     void vote(BigInteger votePublicModulus, Ballot ballot, byte[] ballotSignature) throws RemoteException;
 
+    /**
+     * Results of the votes committed so far, best first. Parties without any vote yet are not listed, the list is empty before the first vote.
+     */
+    List<PartyResult> getInterimResults() throws RemoteException;
+
 }
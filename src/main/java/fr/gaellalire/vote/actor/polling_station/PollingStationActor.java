@@ -16,8 +16,6 @@
 
 package fr.gaellalire.vote.actor.polling_station;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,17 +28,23 @@ import java.rmi.registry.Registry;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.security.Security;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import fr.gaellalire.vestige.spi.trust.TrustException;
 import fr.gaellalire.vote.actor.RemoteActor;
@@ -48,13 +52,16 @@ import fr.gaellalire.vote.actor.citizen.RMIOverrides;
 import fr.gaellalire.vote.actor.party.service.PartyService;
 import fr.gaellalire.vote.actor.polling_station.service.PollingStationService;
 import fr.gaellalire.vote.actor.polling_station.service.PollingStationState;
+import fr.gaellalire.vote.actor.polling_station.service.VotingListSnapshot;
 import fr.gaellalire.vote.actor.polling_station.service.VotingMetadata;
 import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
 import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
 import fr.gaellalire.vote.actor.state.service.Citizen;
 import fr.gaellalire.vote.actor.state.service.Party;
 import fr.gaellalire.vote.actor.state.service.StateService;
-import fr.gaellalire.vote.trust.aes.AESUtils;
+import fr.gaellalire.vote.trust.HybridEnvelope;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
@@ -62,51 +69,91 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
 
     private static final long serialVersionUID = -9123299188247788226L;
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingStationActor.class);
+
     private StateService stateService;
 
-    private List<PartyService> partyServices;
+    private PollingStationDispatcher dispatcher;
 
     private RSAPrivatePart rsaPrivatePart;
 
-    private AESUtils aesUtils;
-
     private VotingMetadata votingMetadata;
 
-    private RSATrustSystem rsaTrustSystem;
+    private SignatureTrustSystem citizenTrustSystem;
+
+    /**
+     * Null until all voting modulus are received.
+     */
+    private volatile VotingModulusList votingModulusList;
+
+    /**
+     * Null until all signatures are received.
+     */
+    private volatile VotingSignatureList votingSignatureList;
+
+    private Queue<BigInteger> receivedVotingModulus = new ConcurrentLinkedQueue<BigInteger>();
 
-    private VotingModulusList votingModulusList;
+    private AtomicInteger receivedVotingModulusCount = new AtomicInteger();
 
-    private VotingSignatureList votingSignatureList;
+    private Map<String, byte[]> receivedSignatureBySSNumber = new ConcurrentHashMap<String, byte[]>();
+
+    private AtomicInteger receivedSignatureCount = new AtomicInteger();
+
+    private volatile VotingListSnapshot votingModulusListSnapshot;
+
+    private volatile VotingListSnapshot votingSignatureListSnapshot;
 
     private volatile PollingStationState pollingStationState;
 
-    private int registeredCount;
+    private AtomicInteger registeredCount = new AtomicInteger();
 
     private String pollingStationName;
 
-    private Object mutex = new Object();
+    /**
+     * Transitions triggered by the last submission, so that the last citizen does not wait for the state and parties.
+     */
+    private ExecutorService transitionExecutor;
+
+    private Object stateMutex = new Object();
 
-    protected PollingStationActor(final EntityManagerFactory entityManagerFactory, final RSAPrivatePart rsaPrivatePart, final AESUtils aesUtils, final String pollingStationName,
-            final StateService stateService, final List<PartyService> partyServices, final RSATrustSystem rsaTrustSystem) throws RemoteException, TrustException {
+    protected PollingStationActor(final EntityManagerFactory entityManagerFactory, final RSAPrivatePart rsaPrivatePart, final String pollingStationName,
+            final StateService stateService, final Map<String, PartyService> partyServiceByName, final SignatureTrustSystem citizenTrustSystem) throws RemoteException, TrustException {
         super(entityManagerFactory);
         this.rsaPrivatePart = rsaPrivatePart;
         this.stateService = stateService;
-        this.partyServices = partyServices;
+        dispatcher = new PollingStationDispatcher(this, pollingStationName, stateService, partyServiceByName);
         votingMetadata = new VotingMetadata(rsaPrivatePart.getPublicPart().getModulus());
-        this.rsaTrustSystem = rsaTrustSystem;
-        this.aesUtils = aesUtils;
+        this.citizenTrustSystem = citizenTrustSystem;
         this.pollingStationName = pollingStationName;
-        votingModulusList = new VotingModulusList();
-        votingSignatureList = new VotingSignatureList();
+        transitionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "polling-station-transition");
+            thread.setDaemon(true);
+            return thread;
+        });
         pollingStationState = PollingStationState.WAIT_FOR_REGISTERING;
     }
 
+    private void setPollingStationState(final PollingStationState pollingStationState) {
+        synchronized (stateMutex) {
+            this.pollingStationState = pollingStationState;
+            stateMutex.notifyAll();
+        }
+    }
+
+    public void setDispatchTimeout(final long timeoutMillis) {
+        dispatcher.setTimeoutMillis(timeoutMillis);
+    }
+
+    public void setDispatchRetryDelay(final long initialRetryDelayMillis, final long maxRetryDelayMillis) {
+        dispatcher.setRetryDelayMillis(initialRetryDelayMillis, maxRetryDelayMillis);
+    }
+
     public String getName() {
         return pollingStationName;
     }
 
     public void endRegisteringPeriod() {
-        pollingStationState = PollingStationState.WAIT_FOR_VOTING_KEYS;
+        setPollingStationState(PollingStationState.WAIT_FOR_VOTING_KEYS);
     }
 
     @Override
@@ -120,50 +167,89 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
             // he could also know how to access private key of a dead citizen
             return null;
         }
-        synchronized (mutex) {
-            registeredCount++;
-        }
+        registeredCount.incrementAndGet();
         return votingMetadata;
     }
 
     @Override
-    public void sendVotingPublicPartModulus(final byte[] iv, final byte[] aesKeyRSACrypted, final byte[] votingPublicPartModulusAESCrypted) throws RemoteException {
+    public void sendVotingPublicPartModulus(final byte[] votingPublicPartModulusEnvelope) throws RemoteException {
         if (pollingStationState != PollingStationState.WAIT_FOR_VOTING_KEYS) {
             return;
         }
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] decoded;
         try {
-            rsaPrivatePart.decrypt(new ByteArrayInputStream(aesKeyRSACrypted), os);
+            decoded = HybridEnvelope.open(rsaPrivatePart, votingPublicPartModulusEnvelope);
         } catch (TrustException e) {
             return;
         }
-        byte[] decodedKey = os.toByteArray();
 
-        SecretKey secretKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
-
-        os.reset();
-        try {
-            aesUtils.decrypt(iv, secretKey, new ByteArrayInputStream(votingPublicPartModulusAESCrypted), os);
-        } catch (Exception e) {
-            return;
+        BigInteger votingPublicPartModulus = new BigInteger(decoded);
+
+        // the modulus is queued before the count is incremented, so the submission reaching the registered count sees all of them
+        receivedVotingModulus.add(votingPublicPartModulus);
+        final int expectedCount = registeredCount.get();
+        if (receivedVotingModulusCount.incrementAndGet() == expectedCount) {
+            transitionExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        endVotingKeysPeriod(expectedCount);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to end voting keys period of polling station " + pollingStationName, e);
+                    }
+                }
+            });
         }
 
-        BigInteger votingPublicPartModulus = new BigInteger(os.toByteArray());
+    }
 
-        synchronized (mutex) {
-            votingModulusList.getModulus().add(votingPublicPartModulus);
-            if (registeredCount == votingModulusList.getModulus().size()) {
-                pollingStationState = PollingStationState.WAIT_FOR_SIGNATURE;
-            }
+    private void endVotingKeysPeriod(final int expectedCount) {
+        VotingModulusList votingModulusList = new VotingModulusList(expectedCount);
+        // submissions which passed the state check before the transition may still be queued, take exactly the expected count
+        List<BigInteger> modulus = votingModulusList.getModulus();
+        for (int i = 0; i < expectedCount; i++) {
+            modulus.add(receivedVotingModulus.poll());
         }
-
+        // the list will not change anymore, serialize it once for all citizens
+        votingModulusList.freeze();
+        votingModulusListSnapshot = VotingListSnapshot.of(votingModulusList);
+        this.votingModulusList = votingModulusList;
+        setPollingStationState(PollingStationState.WAIT_FOR_SIGNATURE);
     }
 
     @Override
     public VotingModulusList getVotingModulusList() throws RemoteException {
+        VotingModulusList votingModulusList = this.votingModulusList;
+        if (votingModulusList == null) {
+            // not complete yet, give what we have
+            votingModulusList = new VotingModulusList();
+            votingModulusList.getModulus().addAll(receivedVotingModulus);
+        }
         return votingModulusList;
     }
 
+    @Override
+    public byte[] getVotingModulusListDigest() throws RemoteException {
+        VotingListSnapshot snapshot = votingModulusListSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getDigest();
+    }
+
+    @Override
+    public VotingListSnapshot getVotingModulusListSnapshot(final byte[] knownDigest) throws RemoteException {
+        return ifModified(votingModulusListSnapshot, knownDigest);
+    }
+
+    private static VotingListSnapshot ifModified(final VotingListSnapshot snapshot, final byte[] knownDigest) {
+        if (snapshot == null || snapshot.hasDigest(knownDigest)) {
+            return null;
+        }
+        return snapshot;
+    }
+
     @Override
     public void sendVotingModulusListSignature(final String ssNumber, final byte[] votingModulusListSignature) throws RemoteException {
         if (pollingStationState != PollingStationState.WAIT_FOR_SIGNATURE) {
@@ -171,8 +257,7 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
         }
         Citizen citizen = stateService.getCitizen(ssNumber);
         try {
-            if (!rsaTrustSystem.publicPartByModulus(citizen.getPublicKeyModulus()).verify(new ByteArrayInputStream(votingModulusList.getEncoded()),
-                    new ByteArrayInputStream(votingModulusListSignature))) {
+            if (!citizenTrustSystem.publicPartByKey(citizen.getPublicKeyModulus()).verifyDigest(votingModulusList.getSha512(), votingModulusListSignature)) {
                 // invalid signature of votingModulusList
                 return;
             }
@@ -180,23 +265,40 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
             return;
         }
 
-        synchronized (mutex) {
-            votingSignatureList.getSignatureBySSNumber().put(ssNumber, votingModulusListSignature);
-
-            if (registeredCount == votingSignatureList.getSignatureBySSNumber().size()) {
-                // first state
-                stateService.setPollingStationData(pollingStationName, votingModulusList, votingSignatureList);
-                // then party (they will check with state data)
-                for (PartyService partyService : partyServices) {
-                    partyService.setPollingStationData(pollingStationName, votingModulusList, votingSignatureList);
+        // a citizen sending its signature again replaces it without being counted twice
+        if (receivedSignatureBySSNumber.put(ssNumber, votingModulusListSignature) == null && receivedSignatureCount.incrementAndGet() == registeredCount.get()) {
+            transitionExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        endSignaturePeriod();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to send data of polling station " + pollingStationName + ", it stays in " + pollingStationState, e);
+                    }
                 }
-                // allow citizen to finish their vote
-                pollingStationState = PollingStationState.WORK_DONE;
-            }
+            });
         }
 
     }
 
+    private void endSignaturePeriod() {
+        VotingSignatureList votingSignatureList = new VotingSignatureList();
+        votingSignatureList.getSignatureBySSNumber().putAll(receivedSignatureBySSNumber);
+        VotingListSnapshot votingSignatureListSnapshot = VotingListSnapshot.of(votingSignatureList);
+        this.votingSignatureListSnapshot = votingSignatureListSnapshot;
+        this.votingSignatureList = votingSignatureList;
+        // state first, then parties in parallel
+        dispatcher.dispatch(votingModulusList, votingModulusListSnapshot, votingSignatureList, votingSignatureListSnapshot).thenRun(new Runnable() {
+
+            @Override
+            public void run() {
+                // allow citizen to finish their vote
+                setPollingStationState(PollingStationState.WORK_DONE);
+            }
+        });
+    }
+
     @Override
     public void switchToDegradedMode(final String ssNumberAsking, final byte[] signature) throws RemoteException {
 
@@ -207,18 +309,74 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
         return pollingStationState;
     }
 
+    @Override
+    public PollingStationState awaitState(final PollingStationState expectedState, final long timeoutMillis) throws RemoteException {
+        long until = System.currentTimeMillis() + timeoutMillis;
+        synchronized (stateMutex) {
+            while (pollingStationState.compareTo(expectedState) < 0) {
+                long ttw = until - System.currentTimeMillis();
+                if (ttw <= 0) {
+                    break;
+                }
+                try {
+                    stateMutex.wait(ttw);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return pollingStationState;
+        }
+    }
+
     @Override
     public VotingSignatureList getSignatureList() throws RemoteException {
+        VotingSignatureList votingSignatureList = this.votingSignatureList;
+        if (votingSignatureList == null) {
+            // not complete yet, give what we have
+            votingSignatureList = new VotingSignatureList();
+            votingSignatureList.getSignatureBySSNumber().putAll(receivedSignatureBySSNumber);
+        }
         return votingSignatureList;
     }
 
-    public static PollingStationActor create(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final String stateHost, final String host,
-            final String pollingStationName, final File privateKeyFile, final Map<String, String> entityManagerProperties) throws Exception {
-        return create(rsaTrustSystem, aesUtils, stateHost, host, pollingStationName, privateKeyFile, entityManagerProperties, null);
+    @Override
+    public byte[] getSignatureListDigest() throws RemoteException {
+        VotingListSnapshot snapshot = votingSignatureListSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getDigest();
+    }
+
+    @Override
+    public VotingListSnapshot getSignatureListSnapshot(final byte[] knownDigest) throws RemoteException {
+        return ifModified(votingSignatureListSnapshot, knownDigest);
+    }
+
+    @Override
+    public void close() {
+        transitionExecutor.shutdown();
+        dispatcher.close();
+        super.close();
+    }
+
+    public static PollingStationActor create(final RSATrustSystem rsaTrustSystem, final String stateHost, final String host, final String pollingStationName,
+            final File privateKeyFile, final Map<String, String> entityManagerProperties) throws Exception {
+        return create(rsaTrustSystem, stateHost, host, pollingStationName, privateKeyFile, entityManagerProperties, null);
     }
 
-    public static PollingStationActor create(final RSATrustSystem rsaTrustSystem, final AESUtils aesUtils, final String stateHost, final String host,
-            final String pollingStationName, final File privateKeyFile, final Map<String, String> entityManagerProperties, final RMIOverrides rmiOverrides) throws Exception {
+    public static PollingStationActor create(final RSATrustSystem rsaTrustSystem, final String stateHost, final String host, final String pollingStationName,
+            final File privateKeyFile, final Map<String, String> entityManagerProperties, final RMIOverrides rmiOverrides) throws Exception {
+        return create(rsaTrustSystem, rsaTrustSystem, stateHost, host, pollingStationName, privateKeyFile, entityManagerProperties, rmiOverrides);
+    }
+
+    /**
+     * @param citizenTrustSystem trust system of the citizen keys, the polling station key is always RSA because citizens encrypt with it
+     */
+    public static PollingStationActor create(final RSATrustSystem rsaTrustSystem, final SignatureTrustSystem citizenTrustSystem, final String stateHost,
+            final String host, final String pollingStationName, final File privateKeyFile, final Map<String, String> entityManagerProperties,
+            final RMIOverrides rmiOverrides) throws Exception {
 
         StateService stateService = null;
         if (rmiOverrides != null) {
@@ -232,7 +390,7 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
         EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("pollingStationPersistenceUnit", entityManagerProperties);
 
         List<Party> partyList = stateService.getPartyList();
-        List<PartyService> partyServices = new ArrayList<PartyService>(partyList.size());
+        Map<String, PartyService> partyServiceByName = new LinkedHashMap<String, PartyService>();
         for (Party party : partyList) {
             PartyService partyService = null;
             if (rmiOverrides != null) {
@@ -242,7 +400,7 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
                 Registry partyRegistry = LocateRegistry.getRegistry(party.getHost());
                 partyService = (PartyService) partyRegistry.lookup(party.getRmiName());
             }
-            partyServices.add(partyService);
+            partyServiceByName.put(party.getName(), partyService);
         }
 
         RSAPrivatePart rsaPrivatePart;
@@ -275,11 +433,13 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
 
         }
 
-        PollingStationActor pollingStationActor = new PollingStationActor(entityManagerFactory, rsaPrivatePart, aesUtils, pollingStationName, stateService, partyServices,
-                rsaTrustSystem);
-        Registry registry = LocateRegistry.getRegistry(host);
-
-        registry.rebind("PollingStation" + pollingStationName, pollingStationActor);
+        PollingStationActor pollingStationActor = new PollingStationActor(entityManagerFactory, rsaPrivatePart, pollingStationName, stateService, partyServiceByName,
+                citizenTrustSystem);
+        pollingStationActor.dispatcher.resumePendingDeliveries();
+        if (rmiOverrides == null || !rmiOverrides.bind("PollingStation" + pollingStationName, pollingStationActor)) {
+            Registry registry = LocateRegistry.getRegistry(host);
+            registry.rebind("PollingStation" + pollingStationName, pollingStationActor);
+        }
         return pollingStationActor;
     }
 
@@ -292,9 +452,8 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
         String pollingStationName = args[argPos++];
         String privateKeyFileName = args[argPos++];
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
-        AESUtils aesUtils = new AESUtils(random);
 
         File privateKeyFile = new File(privateKeyFileName);
 
@@ -303,7 +462,7 @@ public class PollingStationActor extends RemoteActor implements PollingStationSe
         entityManagerProperties.put("hibernate.connection.url", "jdbc:h2:./db/pollingStation" + pollingStationName);
         entityManagerProperties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
 
-        create(rsaTrustSystem, aesUtils, stateHost, host, pollingStationName, privateKeyFile, entityManagerProperties);
+        create(rsaTrustSystem, stateHost, host, pollingStationName, privateKeyFile, entityManagerProperties);
 
     }
 
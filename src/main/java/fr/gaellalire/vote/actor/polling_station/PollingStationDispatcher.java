@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.polling_station;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.gaellalire.vote.actor.RemoteActor;
+import fr.gaellalire.vote.actor.party.service.PartyService;
+import fr.gaellalire.vote.actor.polling_station.jpa.PendingDelivery;
+import fr.gaellalire.vote.actor.polling_station.service.VotingListSnapshot;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.service.StateService;
+
+/**
+ * Sends the polling station data to the state, then to all parties in parallel. Each delivery is first saved in the {@link PendingDelivery} outbox, a call
+ * which fails or does not answer within the timeout is retried with an exponential delay until it succeeds, and pending deliveries are sent again after a
+ * restart. A retry of a call still running waits for it instead of sending the data again. Targets must accept the same data twice.
+ * @author Gael Lalire
+ */
+public class PollingStationDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingStationDispatcher.class);
+
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    public static final long DEFAULT_INITIAL_RETRY_DELAY = 1000;
+
+    public static final long DEFAULT_MAX_RETRY_DELAY = 60000;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static final class Delivery {
+
+        private long id;
+
+        private String target;
+
+        private VotingModulusList votingModulusList;
+
+        private VotingSignatureList votingSignatureList;
+
+        private int attempts;
+
+        /**
+         * Call which did not answer within the timeout, the next attempt waits for it instead of sending the data again.
+         */
+        private Future<Void> call;
+
+        /**
+         * Completed after the first attempt, whatever its result.
+         */
+        private CompletableFuture<Void> firstAttempt = new CompletableFuture<Void>();
+
+        /**
+         * Completed once the target acknowledged the data.
+         */
+        private CompletableFuture<Void> delivered = new CompletableFuture<Void>();
+
+        Delivery(final long id, final String target, final VotingModulusList votingModulusList, final VotingSignatureList votingSignatureList, final int attempts) {
+            this.id = id;
+            this.target = target;
+            this.votingModulusList = votingModulusList;
+            this.votingSignatureList = votingSignatureList;
+            this.attempts = attempts;
+        }
+
+    }
+
+    private RemoteActor remoteActor;
+
+    private String pollingStationName;
+
+    private StateService stateService;
+
+    private Map<String, PartyService> partyServiceByName;
+
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT;
+
+    private volatile long initialRetryDelayMillis = DEFAULT_INITIAL_RETRY_DELAY;
+
+    private volatile long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY;
+
+    /**
+     * Runs the attempts, an attempt waits at most timeoutMillis for its call.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Runs the remote calls, a call which timed out may still hold its thread.
+     */
+    private ExecutorService callExecutor;
+
+    public PollingStationDispatcher(final RemoteActor remoteActor, final String pollingStationName, final StateService stateService,
+            final Map<String, PartyService> partyServiceByName) {
+        this.remoteActor = remoteActor;
+        this.pollingStationName = pollingStationName;
+        this.stateService = stateService;
+        this.partyServiceByName = partyServiceByName;
+        scheduler = Executors.newScheduledThreadPool(partyServiceByName.size() + 1, runnable -> {
+            Thread thread = new Thread(runnable, "polling-station-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        callExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "polling-station-dispatcher-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setTimeoutMillis(final long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void setRetryDelayMillis(final long initialRetryDelayMillis, final long maxRetryDelayMillis) {
+        this.initialRetryDelayMillis = initialRetryDelayMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    /**
+     * Send again the deliveries left in the outbox by a previous run.
+     */
+    public void resumePendingDeliveries() {
+        EntityManager entityManager = remoteActor.getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PendingDelivery> query = criteriaBuilder.createQuery(PendingDelivery.class);
+        Root<PendingDelivery> root = query.from(PendingDelivery.class);
+        query.select(root).where(criteriaBuilder.equal(root.get("pollingStationName"), pollingStationName));
+
+        Delivery stateDelivery = null;
+        List<Delivery> partyDeliveries = new ArrayList<Delivery>();
+        for (PendingDelivery pendingDelivery : entityManager.createQuery(query).getResultList()) {
+            Delivery delivery;
+            try {
+                delivery = new Delivery(pendingDelivery.getId(), pendingDelivery.getTarget(),
+                        new VotingListSnapshot(null, pendingDelivery.getVotingModulusList()).toVotingModulusList(),
+                        new VotingListSnapshot(null, pendingDelivery.getSignatureList()).toVotingSignatureList(), pendingDelivery.getAttempts());
+            } catch (Exception e) {
+                LOGGER.error("Unreadable pending delivery " + pendingDelivery.getId(), e);
+                continue;
+            }
+            if (PendingDelivery.STATE_TARGET.equals(delivery.target)) {
+                stateDelivery = delivery;
+            } else {
+                partyDeliveries.add(delivery);
+            }
+        }
+        if (stateDelivery != null || !partyDeliveries.isEmpty()) {
+            LOGGER.info("Resuming {} pending deliveries of polling station {}", partyDeliveries.size() + (stateDelivery == null ? 0 : 1), pollingStationName);
+            dispatch(stateDelivery, partyDeliveries);
+        }
+    }
+
+    /**
+     * The returned future completes when the state received the data and every party either received it or failed once, so that a slow party does
+     * not delay the polling station more than the timeout. Failed parties are retried in background. The snapshots already built for citizens are
+     * saved in the outbox as is.
+     * @throws IllegalStateException if the outbox cannot be saved, nothing is sent then
+     */
+    public CompletableFuture<Void> dispatch(final VotingModulusList votingModulusList, final VotingListSnapshot votingModulusListSnapshot,
+            final VotingSignatureList votingSignatureList, final VotingListSnapshot votingSignatureListSnapshot) {
+        byte[] votingModulusListData = votingModulusListSnapshot.getData();
+        byte[] signatureListData = votingSignatureListSnapshot.getData();
+
+        List<PendingDelivery> pendingDeliveries = new ArrayList<PendingDelivery>();
+        pendingDeliveries.add(new PendingDelivery(pollingStationName, PendingDelivery.STATE_TARGET, votingModulusListData, signatureListData));
+        for (String partyName : partyServiceByName.keySet()) {
+            pendingDeliveries.add(new PendingDelivery(pollingStationName, PendingDelivery.PARTY_TARGET_PREFIX + partyName, votingModulusListData, signatureListData));
+        }
+
+        EntityManager entityManager = remoteActor.getEntityManager();
+        remoteActor.beginTransaction();
+        try {
+            for (PendingDelivery pendingDelivery : pendingDeliveries) {
+                entityManager.persist(pendingDelivery);
+            }
+            remoteActor.commit();
+        } catch (RuntimeException e) {
+            if (entityManager.getTransaction().isActive()) {
+                remoteActor.rollback();
+            }
+            // the deliveries must not be flushed by a later transaction of this thread
+            entityManager.clear();
+            throw new IllegalStateException("Unable to save deliveries of polling station " + pollingStationName, e);
+        }
+
+        Delivery stateDelivery = null;
+        List<Delivery> partyDeliveries = new ArrayList<Delivery>();
+        for (PendingDelivery pendingDelivery : pendingDeliveries) {
+            Delivery delivery = new Delivery(pendingDelivery.getId(), pendingDelivery.getTarget(), votingModulusList, votingSignatureList, 0);
+            if (PendingDelivery.STATE_TARGET.equals(delivery.target)) {
+                stateDelivery = delivery;
+            } else {
+                partyDeliveries.add(delivery);
+            }
+        }
+        return dispatch(stateDelivery, partyDeliveries);
+    }
+
+    private CompletableFuture<Void> dispatch(final Delivery stateDelivery, final List<Delivery> partyDeliveries) {
+        CompletableFuture<Void> stateDelivered;
+        if (stateDelivery == null) {
+            stateDelivered = CompletableFuture.completedFuture(null);
+        } else {
+            schedule(stateDelivery, 0);
+            stateDelivered = stateDelivery.delivered;
+        }
+        // parties check the data against the state, so they wait for the state delivery
+        return stateDelivered.thenCompose(ignored -> {
+            CompletableFuture<?>[] firstAttempts = new CompletableFuture<?>[partyDeliveries.size()];
+            for (int i = 0; i < firstAttempts.length; i++) {
+                Delivery partyDelivery = partyDeliveries.get(i);
+                schedule(partyDelivery, 0);
+                firstAttempts[i] = partyDelivery.firstAttempt;
+            }
+            return CompletableFuture.allOf(firstAttempts);
+        });
+    }
+
+    private void schedule(final Delivery delivery, final long delayMillis) {
+        if (scheduler.isShutdown()) {
+            // left in the outbox for the next run
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                attempt(delivery);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(final Delivery delivery) {
+        boolean delivered = false;
+        Future<Void> call = delivery.call;
+        if (call == null) {
+            call = callExecutor.submit(() -> {
+                send(delivery);
+                return null;
+            });
+            delivery.call = call;
+        }
+        try {
+            call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            delivered = true;
+            delivery.call = null;
+        } catch (TimeoutException e) {
+            // remote calls are not interruptible, the call is kept so that two calls never send the same data at once
+            LOGGER.warn("Delivery of polling station {} to {} timed out", pollingStationName, delivery.target);
+        } catch (ExecutionException e) {
+            delivery.call = null;
+            LOGGER.warn("Delivery of polling station " + pollingStationName + " to " + delivery.target + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        delivery.attempts++;
+        try {
+            remoteActor.beginTransaction();
+            EntityManager entityManager = remoteActor.getEntityManager();
+            PendingDelivery pendingDelivery = entityManager.find(PendingDelivery.class, delivery.id);
+            if (pendingDelivery != null) {
+                if (delivered) {
+                    entityManager.remove(pendingDelivery);
+                } else {
+                    pendingDelivery.setAttempts(delivery.attempts);
+                }
+            }
+            remoteActor.commit();
+        } catch (RuntimeException e) {
+            remoteActor.rollback();
+            LOGGER.error("Unable to update pending delivery " + delivery.id, e);
+        }
+
+        delivery.firstAttempt.complete(null);
+        if (delivered) {
+            delivery.delivered.complete(null);
+        } else {
+            schedule(delivery, nextRetryDelay(delivery.attempts));
+        }
+    }
+
+    private long nextRetryDelay(final int attempts) {
+        long delay = initialRetryDelayMillis << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxRetryDelayMillis) {
+            return maxRetryDelayMillis;
+        }
+        return delay;
+    }
+
+    private void send(final Delivery delivery) throws Exception {
+        if (PendingDelivery.STATE_TARGET.equals(delivery.target)) {
+            stateService.setPollingStationData(pollingStationName, delivery.votingModulusList, delivery.votingSignatureList);
+            return;
+        }
+        String partyName = delivery.target.substring(PendingDelivery.PARTY_TARGET_PREFIX.length());
+        PartyService partyService = partyServiceByName.get(partyName);
+        if (partyService == null) {
+            throw new IllegalStateException("Unknown party " + partyName);
+        }
+        partyService.setPollingStationData(pollingStationName, delivery.votingModulusList, delivery.votingSignatureList);
+    }
+
+    /**
+     * Undelivered data stays in the outbox.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        callExecutor.shutdownNow();
+    }
+
+}
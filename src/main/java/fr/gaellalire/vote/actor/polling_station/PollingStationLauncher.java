@@ -29,7 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fr.gaellalire.vote.AbstractLauncher;
-import fr.gaellalire.vote.trust.aes.AESUtils;
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.transport.WireRMIOverrides;
+import fr.gaellalire.vote.transport.WireServer;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 /**
@@ -69,19 +72,39 @@ public class PollingStationLauncher extends AbstractLauncher implements Callable
 
         Properties properties = loadProperties("pollingStation.properties");
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
-        AESUtils aesUtils = new AESUtils(random);
 
         String pollingStationName = properties.getProperty("name");
         File privateKeyFile = new File(data, "ps.key");
 
         Map<String, String> entityManagerProperties = createEntityManagerProperties(properties);
 
+        WireServer wireServer = createWireServer(properties);
+        RMIOverrides rmiOverrides = null;
+        String host = properties.getProperty("host");
+        if (wireServer != null) {
+            host = host + ":" + wireServer.getPort();
+            rmiOverrides = createWireRMIOverrides(properties, properties.getProperty("stateHost"), wireServer);
+        }
+
         LOGGER.info("Creating polling station {}", pollingStationName);
-        PollingStationActor pollingStationActor = PollingStationActor.create(rsaTrustSystem, aesUtils, properties.getProperty("stateHost"), properties.getProperty("host"),
-                pollingStationName, privateKeyFile, entityManagerProperties);
+        PollingStationActor pollingStationActor;
+        try {
+            pollingStationActor = PollingStationActor.create(rsaTrustSystem, createCitizenTrustSystem(properties, rsaTrustSystem, random),
+                    properties.getProperty("stateHost"), host, pollingStationName, privateKeyFile, entityManagerProperties, rmiOverrides);
+        } catch (Exception e) {
+            if (wireServer != null) {
+                wireServer.close();
+            }
+            throw e;
+        }
+
+        pollingStationActor.setDispatchTimeout(Long.parseLong(properties.getProperty("dispatch.timeout", String.valueOf(PollingStationDispatcher.DEFAULT_TIMEOUT))));
+        pollingStationActor.setDispatchRetryDelay(
+                Long.parseLong(properties.getProperty("dispatch.initialRetryDelay", String.valueOf(PollingStationDispatcher.DEFAULT_INITIAL_RETRY_DELAY))),
+                Long.parseLong(properties.getProperty("dispatch.maxRetryDelay", String.valueOf(PollingStationDispatcher.DEFAULT_MAX_RETRY_DELAY))));
 
         long until;
         String property = properties.getProperty("endRegisteringPeriod");
@@ -101,6 +124,9 @@ public class PollingStationLauncher extends AbstractLauncher implements Callable
             }
         } finally {
             pollingStationActor.close();
+            if (wireServer != null) {
+                wireServer.close();
+            }
         }
 
     }
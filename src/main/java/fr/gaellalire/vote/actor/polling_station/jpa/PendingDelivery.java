@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.polling_station.jpa;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * Outbox row : polling station data not yet acknowledged by its target (the state or a party). The row is removed once delivered.
+ * @author Gael Lalire
+ */
+@Entity
+@Table
+public class PendingDelivery {
+
+    public static final String STATE_TARGET = "state";
+
+    public static final String PARTY_TARGET_PREFIX = "party:";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(nullable = false)
+    private String pollingStationName;
+
+    @Column(nullable = false)
+    private String target;
+
+    /**
+     * Snapshot data of the voting modulus list.
+     */
+    @Lob
+    @Column(nullable = false)
+    private byte[] votingModulusList;
+
+    /**
+     * Snapshot data of the signature list.
+     */
+    @Lob
+    @Column(nullable = false)
+    private byte[] signatureList;
+
+    private int attempts;
+
+    public PendingDelivery() {
+    }
+
+    public PendingDelivery(final String pollingStationName, final String target, final byte[] votingModulusList, final byte[] signatureList) {
+        this.pollingStationName = pollingStationName;
+        this.target = target;
+        this.votingModulusList = votingModulusList;
+        this.signatureList = signatureList;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPollingStationName() {
+        return pollingStationName;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public byte[] getVotingModulusList() {
+        return votingModulusList;
+    }
+
+    public byte[] getSignatureList() {
+        return signatureList;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(final int attempts) {
+        this.attempts = attempts;
+    }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.polling_station.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Voting keys stored outside of the heap, one fixed slot per key holding its unsigned value left padded with zeros. A 1024 bits RSA modulus fills a slot,
+ * an Ed25519 key uses the end of it. Keys are compared, hashed and copied from the slots without creating a BigInteger. Comparing slots as unsigned bytes
+ * gives the numeric order, once {@link #sort() sorted} a key is found by binary search.
+ * @author Gael Lalire
+ */
+final class ModulusStore {
+
+    public static final int SLOT_SIZE = 128;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Slots copied at once when streaming the store.
+     */
+    private static final int CHUNK_SLOTS = 64;
+
+    private ByteBuffer buffer;
+
+    private int size;
+
+    private boolean sorted;
+
+    ModulusStore(final int capacity) {
+        buffer = ByteBuffer.allocateDirect(Math.max(capacity, MIN_CAPACITY) * SLOT_SIZE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        int slotCapacity = buffer.capacity() / SLOT_SIZE;
+        if (capacity <= slotCapacity) {
+            return;
+        }
+        int newSlotCapacity = (int) Math.min(Math.max((long) slotCapacity * 2, capacity), Integer.MAX_VALUE / SLOT_SIZE);
+        if (newSlotCapacity < capacity) {
+            throw new IllegalStateException("Too many modulus");
+        }
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(newSlotCapacity * SLOT_SIZE);
+        ByteBuffer used = buffer.duplicate();
+        used.position(0).limit(size * SLOT_SIZE);
+        newBuffer.put(used);
+        newBuffer.clear();
+        buffer = newBuffer;
+    }
+
+    /**
+     * Release the unused slots.
+     */
+    public void trim() {
+        if (buffer.capacity() == Math.max(size, MIN_CAPACITY) * SLOT_SIZE) {
+            return;
+        }
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(Math.max(size, MIN_CAPACITY) * SLOT_SIZE);
+        ByteBuffer used = buffer.duplicate();
+        used.position(0).limit(size * SLOT_SIZE);
+        newBuffer.put(used);
+        newBuffer.clear();
+        buffer = newBuffer;
+    }
+
+    private static byte[] toSlot(final BigInteger modulus) {
+        if (modulus.signum() < 0 || modulus.bitLength() > SLOT_SIZE * 8) {
+            return null;
+        }
+        byte[] bytes = modulus.toByteArray();
+        byte[] slot = new byte[SLOT_SIZE];
+        // toByteArray may start with a sign byte which is not part of the value
+        int length = Math.min(bytes.length, SLOT_SIZE);
+        System.arraycopy(bytes, bytes.length - length, slot, SLOT_SIZE - length, length);
+        return slot;
+    }
+
+    public void add(final BigInteger modulus) {
+        byte[] slot = toSlot(modulus);
+        if (slot == null) {
+            throw new IllegalArgumentException("Modulus does not fit in a " + SLOT_SIZE + " bytes slot");
+        }
+        ensureCapacity(size + 1);
+        buffer.position(size * SLOT_SIZE);
+        buffer.put(slot);
+        buffer.clear();
+        size++;
+        sorted = false;
+    }
+
+    public BigInteger get(final int index) {
+        byte[] slot = new byte[SLOT_SIZE];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(index * SLOT_SIZE);
+        duplicate.get(slot);
+        return new BigInteger(1, slot);
+    }
+
+    public int indexOf(final BigInteger modulus) {
+        byte[] slot = toSlot(modulus);
+        if (slot == null) {
+            return -1;
+        }
+        ByteBuffer key = ByteBuffer.wrap(slot);
+        if (sorted) {
+            // lowest index of the key, a replayed key may be present twice
+            int low = 0;
+            int high = size - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int cmp = compareSlot(middle * SLOT_SIZE, key);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else {
+                    if (cmp == 0) {
+                        found = middle;
+                    }
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+        long first = key.getLong(SLOT_SIZE - 8);
+        for (int i = 0; i < size; i++) {
+            int offset = i * SLOT_SIZE;
+            // the low order bytes differ first between two keys
+            if (buffer.getLong(offset + SLOT_SIZE - 8) == first && equalsSlot(offset, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int compareSlot(final int offset, final ByteBuffer key) {
+        return compareSlots(buffer, offset, key, 0);
+    }
+
+    private static int compareSlots(final ByteBuffer buffer, final int offset, final ByteBuffer otherBuffer, final int otherOffset) {
+        for (int i = 0; i < SLOT_SIZE; i += 8) {
+            int cmp = Long.compareUnsigned(buffer.getLong(offset + i), otherBuffer.getLong(otherOffset + i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Put the slots in ascending order, equal keys are kept. Nothing is copied if the slots are already in order, which is the case of a list
+     * read from a sorted one.
+     */
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        boolean inOrder = true;
+        for (int i = 1; i < size && inOrder; i++) {
+            inOrder = compareSlots(buffer, (i - 1) * SLOT_SIZE, buffer, i * SLOT_SIZE) <= 0;
+        }
+        if (!inOrder) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            final ByteBuffer source = buffer;
+            Arrays.sort(order, (o1, o2) -> compareSlots(source, o1 * SLOT_SIZE, source, o2 * SLOT_SIZE));
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity());
+            ByteBuffer duplicate = buffer.duplicate();
+            for (int i = 0; i < size; i++) {
+                duplicate.limit(order[i] * SLOT_SIZE + SLOT_SIZE).position(order[i] * SLOT_SIZE);
+                newBuffer.put(duplicate);
+                duplicate.clear();
+            }
+            newBuffer.clear();
+            buffer = newBuffer;
+        }
+        sorted = true;
+    }
+
+    private boolean equalsSlot(final int offset, final ByteBuffer key) {
+        for (int i = 0; i < SLOT_SIZE; i += 8) {
+            if (buffer.getLong(offset + i) != key.getLong(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value in hexadecimal, same as {@link BigInteger#toString(int) toString(16)}
+     */
+    public String toHex(final int index) {
+        int offset = index * SLOT_SIZE;
+        int end = offset + SLOT_SIZE;
+        int start = offset;
+        while (start < end && buffer.get(start) == 0) {
+            start++;
+        }
+        if (start == end) {
+            return "0";
+        }
+        StringBuilder stringBuilder = new StringBuilder((end - start) * 2);
+        int first = buffer.get(start) & 0xFF;
+        if (first >= 0x10) {
+            stringBuilder.append(Character.forDigit(first >>> 4, 16));
+        }
+        stringBuilder.append(Character.forDigit(first & 0xF, 16));
+        for (int i = start + 1; i < end; i++) {
+            int b = buffer.get(i) & 0xFF;
+            stringBuilder.append(Character.forDigit(b >>> 4, 16));
+            stringBuilder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * @return the index of the first byte of the {@link BigInteger#toByteArray()} of the slot at offset, one before the slot if a sign byte
+     *         (or the single byte of zero) is needed
+     */
+    private int encodedStart(final int offset) {
+        int end = offset + SLOT_SIZE;
+        int start = offset;
+        while (start < end && buffer.get(start) == 0) {
+            start++;
+        }
+        if (start == end || buffer.get(start) < 0) {
+            return start - 1;
+        }
+        return start;
+    }
+
+    /**
+     * Feed the digest with each {@link BigInteger#toByteArray()} followed by a zero byte, read directly from the slots.
+     */
+    public void updateDigest(final MessageDigest messageDigest) {
+        ByteBuffer duplicate = buffer.duplicate();
+        for (int i = 0; i < size; i++) {
+            int offset = i * SLOT_SIZE;
+            int start = encodedStart(offset);
+            if (start < offset) {
+                messageDigest.update((byte) 0);
+                start = offset;
+            }
+            duplicate.limit(offset + SLOT_SIZE).position(start);
+            messageDigest.update(duplicate);
+            duplicate.clear();
+            messageDigest.update((byte) 0);
+        }
+    }
+
+    /**
+     * Write the data hashed by {@link #updateDigest(MessageDigest)}.
+     */
+    public void writeEncoded(final OutputStream os) throws IOException {
+        byte[] encoded = new byte[SLOT_SIZE + 1];
+        ByteBuffer duplicate = buffer.duplicate();
+        for (int i = 0; i < size; i++) {
+            int offset = i * SLOT_SIZE;
+            int start = encodedStart(offset);
+            int length = offset + SLOT_SIZE - start;
+            int valueLength = Math.min(length, SLOT_SIZE);
+            duplicate.position(offset + SLOT_SIZE - valueLength);
+            duplicate.get(encoded, length - valueLength, valueLength);
+            if (length > valueLength) {
+                encoded[0] = 0;
+            }
+            os.write(encoded, 0, length);
+            os.write(0);
+        }
+    }
+
+    /**
+     * Write the slot size, the number of slots then the slots.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(SLOT_SIZE);
+        out.writeInt(size);
+        byte[] chunk = new byte[Math.min(size, CHUNK_SLOTS) * SLOT_SIZE];
+        ByteBuffer duplicate = buffer.duplicate();
+        int remaining = size * SLOT_SIZE;
+        while (remaining > 0) {
+            int length = Math.min(remaining, chunk.length);
+            duplicate.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+            remaining -= length;
+        }
+    }
+
+    /**
+     * Read what {@link #writeTo(DataOutput)} wrote. The store grows with the data actually read, a wrong count cannot allocate a huge buffer.
+     */
+    public static ModulusStore readFrom(final DataInput in) throws IOException {
+        int slotSize = in.readInt();
+        if (slotSize != SLOT_SIZE) {
+            throw new IOException("Unsupported modulus slot size " + slotSize);
+        }
+        int count = in.readInt();
+        if (count < 0 || count > Integer.MAX_VALUE / SLOT_SIZE) {
+            throw new IOException("Invalid modulus count " + count);
+        }
+        ModulusStore modulusStore = new ModulusStore(Math.min(count, CHUNK_SLOTS));
+        byte[] chunk = new byte[Math.min(count, CHUNK_SLOTS) * SLOT_SIZE];
+        int remaining = count;
+        while (remaining > 0) {
+            int slots = Math.min(remaining, CHUNK_SLOTS);
+            in.readFully(chunk, 0, slots * SLOT_SIZE);
+            modulusStore.ensureCapacity(modulusStore.size + slots);
+            modulusStore.buffer.position(modulusStore.size * SLOT_SIZE);
+            modulusStore.buffer.put(chunk, 0, slots * SLOT_SIZE);
+            modulusStore.buffer.clear();
+            modulusStore.size += slots;
+            remaining -= slots;
+        }
+        return modulusStore;
+    }
+
+}
@@ -33,18 +33,48 @@ public interface PollingStationService extends Remote {
 
     /**
      * We crypt to be able to ignore data from people who don't know the crypting key
-     * @param votingPublicPartModulusCrypted
+     * @param votingPublicPartModulusEnvelope the voting key sealed by a {@link fr.gaellalire.vote.trust.HybridEnvelope} for the polling station key
      */
     @RequireAnonymousNetwork
-    void sendVotingPublicPartModulus(byte[] iv, byte[] aesKeyRSACrypted, byte[] votingPublicPartModulusAESCrypted) throws RemoteException;
+    void sendVotingPublicPartModulus(byte[] votingPublicPartModulusEnvelope) throws RemoteException;
 
     VotingModulusList getVotingModulusList() throws RemoteException;
 
+    /**
+     * @return the SHA-512 of the frozen voting modulus list snapshot, null until the polling station reaches {@link PollingStationState#WAIT_FOR_SIGNATURE}
+     */
+    byte[] getVotingModulusListDigest() throws RemoteException;
+
+    /**
+     * Conditional download of the frozen voting modulus list.
+     * @param knownDigest digest of the snapshot the caller already has, may be null
+     * @return null if knownDigest is the current digest or if the list is not frozen yet
+     */
+    VotingListSnapshot getVotingModulusListSnapshot(byte[] knownDigest) throws RemoteException;
+
     void sendVotingModulusListSignature(String ssNumber, byte[] votingModulusListSignature) throws RemoteException;
 
     void switchToDegradedMode(String ssNumberAsking, byte[] signature) throws RemoteException;
 
     PollingStationState getState() throws RemoteException;
 
+    /**
+     * Long poll, return as soon as the polling station reached (or passed) the expected state, or when the timeout expires.
+     * @return the current state
+     */
+    PollingStationState awaitState(PollingStationState expectedState, long timeoutMillis) throws RemoteException;
+
     VotingSignatureList getSignatureList() throws RemoteException;
+
+    /**
+     * @return the SHA-512 of the frozen signature list snapshot, null until the polling station reaches {@link PollingStationState#WORK_DONE}
+     */
+    byte[] getSignatureListDigest() throws RemoteException;
+
+    /**
+     * Conditional download of the frozen signature list.
+     * @param knownDigest digest of the snapshot the caller already has, may be null
+     * @return null if knownDigest is the current digest or if the list is not frozen yet
+     */
+    VotingListSnapshot getSignatureListSnapshot(byte[] knownDigest) throws RemoteException;
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.polling_station.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Immutable serialized form of a frozen {@link VotingModulusList} or {@link VotingSignatureList}, addressed by the SHA-512 of its data. The polling station builds it once
+ * and sends the same bytes to every citizen.
+ * @author Gael Lalire
+ */
+public final class VotingListSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 4163917042658297310L;
+
+    private byte[] digest;
+
+    private byte[] data;
+
+    public VotingListSnapshot(final byte[] digest, final byte[] data) {
+        this.digest = digest;
+        this.data = data;
+    }
+
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return true if the data matches the digest, a cached snapshot can then be trusted as long as the digest is the expected one
+     */
+    public boolean isValid() {
+        return MessageDigest.isEqual(digest, sha512(data));
+    }
+
+    public boolean hasDigest(final byte[] otherDigest) {
+        return Arrays.equals(digest, otherDigest);
+    }
+
+    public static VotingListSnapshot of(final VotingModulusList votingModulusList) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(8 + votingModulusList.size() * ModulusStore.SLOT_SIZE);
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        try {
+            votingModulusList.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // not possible
+        }
+        byte[] data = byteArrayOutputStream.toByteArray();
+        return new VotingListSnapshot(sha512(data), data);
+    }
+
+    public static VotingListSnapshot of(final VotingSignatureList votingSignatureList) {
+        // sorted so that the same signatures always give the same digest
+        Map<String, byte[]> signatureBySSNumber = new TreeMap<String, byte[]>(votingSignatureList.getSignatureBySSNumber());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        try {
+            out.writeInt(signatureBySSNumber.size());
+            for (Entry<String, byte[]> entry : signatureBySSNumber.entrySet()) {
+                writeBytes(out, entry.getKey().getBytes(StandardCharsets.UTF_8));
+                writeBytes(out, entry.getValue());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // not possible
+        }
+        byte[] data = byteArrayOutputStream.toByteArray();
+        return new VotingListSnapshot(sha512(data), data);
+    }
+
+    public VotingModulusList toVotingModulusList() throws IOException {
+        return VotingModulusList.readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public VotingSignatureList toVotingSignatureList() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        VotingSignatureList votingSignatureList = new VotingSignatureList();
+        Map<String, byte[]> signatureBySSNumber = votingSignatureList.getSignatureBySSNumber();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            signatureBySSNumber.put(new String(readBytes(in), StandardCharsets.UTF_8), readBytes(in));
+        }
+        return votingSignatureList;
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static byte[] sha512(final byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-512").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
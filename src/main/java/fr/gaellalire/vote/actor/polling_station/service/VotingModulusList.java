@@ -17,40 +17,206 @@
 package fr.gaellalire.vote.actor.polling_station.service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
+ * The list is filled while the polling station is in WAIT_FOR_VOTING_KEYS, then {@link #freeze() frozen}. A frozen list cannot be modified anymore and computes its
+ * SHA-512 only once, every citizen signature is checked against the same digest. Freezing sorts the modulus in ascending order, so the encoding does not
+ * depend on the order the keys were received (which could help to link a key to its citizen) and lookups are binary searches. The keys are kept in a {@link ModulusStore} outside of the heap, the
+ * polling station, the state and the parties hold one per polling station.
  * @author Gael Lalire
  */
 public class VotingModulusList implements Serializable {
 
     private static final long serialVersionUID = 950121547028008668L;
 
-    private List<BigInteger> modulus;
+    private transient ModulusStore modulusStore;
+
+    private boolean frozen;
+
+    private transient byte[] sha512;
+
+    private transient List<BigInteger> modulus;
 
     public VotingModulusList() {
-        modulus = new ArrayList<BigInteger>();
+        this(0);
+    }
+
+    /**
+     * @param capacity expected number of modulus, the list grows beyond it if needed
+     */
+    public VotingModulusList(final int capacity) {
+        this(new ModulusStore(capacity), false);
+    }
+
+    private VotingModulusList(final ModulusStore modulusStore, final boolean frozen) {
+        this.modulusStore = modulusStore;
+        this.frozen = frozen;
+        modulus = new ModulusView();
+    }
+
+    /**
+     * List view of the store, each get creates a BigInteger.
+     * @author Gael Lalire
+     */
+    private final class ModulusView extends AbstractList<BigInteger> {
+
+        @Override
+        public BigInteger get(final int index) {
+            if (index < 0 || index >= modulusStore.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + modulusStore.size());
+            }
+            return modulusStore.get(index);
+        }
+
+        @Override
+        public int size() {
+            return modulusStore.size();
+        }
+
+        @Override
+        public boolean add(final BigInteger e) {
+            if (frozen) {
+                throw new UnsupportedOperationException("Frozen voting modulus list");
+            }
+            modulusStore.add(e);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return indexOf(o) != -1;
+        }
+
+        @Override
+        public int indexOf(final Object o) {
+            if (!(o instanceof BigInteger)) {
+                return -1;
+            }
+            return modulusStore.indexOf((BigInteger) o);
+        }
+
     }
 
+    /**
+     * @return the modulus, read only if the list is frozen
+     */
     public List<BigInteger> getModulus() {
         return modulus;
     }
 
+    public int size() {
+        return modulusStore.size();
+    }
+
+    /**
+     * @return the modulus at index in hexadecimal, without creating a BigInteger
+     */
+    public String getModulusHex(final int index) {
+        if (index < 0 || index >= modulusStore.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + modulusStore.size());
+        }
+        return modulusStore.toHex(index);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        modulusStore.sort();
+        modulusStore.trim();
+        frozen = true;
+    }
+
+    /**
+     * @return true if the modulus is in the list, binary search if the list is frozen
+     */
+    public boolean contains(final BigInteger votingModulus) {
+        return modulusStore.indexOf(votingModulus) != -1;
+    }
+
+    /**
+     * Each modulus ({@link BigInteger#toByteArray()}) followed by a zero byte.
+     */
     public byte[] getEncoded() {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        for (BigInteger bigInteger : modulus) {
-            try {
-                byteArrayOutputStream.write(bigInteger.toByteArray());
-            } catch (IOException e) {
-                // not possible
-            }
-            byteArrayOutputStream.write(0);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(modulusStore.size() * (ModulusStore.SLOT_SIZE + 2));
+        try {
+            modulusStore.writeEncoded(byteArrayOutputStream);
+        } catch (IOException e) {
+            // not possible
         }
         return byteArrayOutputStream.toByteArray();
     }
 
+    /**
+     * @return the SHA-512 of {@link #getEncoded()}, signatures can be created and verified from it without hashing the whole list again
+     */
+    public byte[] getSha512() {
+        if (!frozen) {
+            return computeSha512();
+        }
+        byte[] result = sha512;
+        if (result == null) {
+            result = computeSha512();
+            sha512 = result;
+        }
+        return result.clone();
+    }
+
+    private byte[] computeSha512() {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        modulusStore.updateDigest(messageDigest);
+        return messageDigest.digest();
+    }
+
+    /**
+     * Binary form shared by the wire transport and the snapshots, the slots are copied as is.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        modulusStore.writeTo(out);
+    }
+
+    /**
+     * @return a frozen list, sorted again if the writer did not respect the order
+     */
+    public static VotingModulusList readFrom(final DataInput in) throws IOException {
+        ModulusStore modulusStore = ModulusStore.readFrom(in);
+        modulusStore.sort();
+        return new VotingModulusList(modulusStore, true);
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        modulusStore.writeTo(out);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        modulusStore = ModulusStore.readFrom(in);
+        if (frozen) {
+            modulusStore.sort();
+        }
+        modulus = new ModulusView();
+    }
+
 }
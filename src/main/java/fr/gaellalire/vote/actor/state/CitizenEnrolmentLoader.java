@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.gaellalire.vote.actor.state.service.CitizenEnrolment;
+import fr.gaellalire.vote.actor.state.service.StateService;
+
+/**
+ * Stream citizens to the state. Each line is <code>ssNumber;pollingStationName;publicKeyModulusHex</code>.
+ * @author Gael Lalire
+ */
+public class CitizenEnrolmentLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CitizenEnrolmentLoader.class);
+
+    private StateService stateService;
+
+    private int chunkSize;
+
+    public CitizenEnrolmentLoader(final StateService stateService, final int chunkSize) {
+        this.stateService = stateService;
+        this.chunkSize = chunkSize;
+    }
+
+    public long load(final Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        List<CitizenEnrolment> chunk = new ArrayList<CitizenEnrolment>(chunkSize);
+        long count = 0;
+        long start = System.currentTimeMillis();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] split = line.split(";");
+            if (split.length != 3) {
+                throw new IOException("Invalid enrolment line " + line);
+            }
+            chunk.add(new CitizenEnrolment(split[0], split[1], new BigInteger(split[2], 16)));
+            if (chunk.size() == chunkSize) {
+                stateService.addCitizens(chunk);
+                count += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (chunk.size() != 0) {
+            stateService.addCitizens(chunk);
+            count += chunk.size();
+        }
+        long duration = System.currentTimeMillis() - start;
+        LOGGER.info("{} citizens enrolled in {} ms", count, duration);
+        return count;
+    }
+
+}
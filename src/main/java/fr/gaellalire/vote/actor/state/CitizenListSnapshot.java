@@ -0,0 +1,379 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.gaellalire.vote.actor.state.service.Citizen;
+
+/**
+ * Immutable citizen lists of all polling stations, frozen when the vote is initiated. The lists are kept encoded (ssNumber and modulus of each
+ * citizen) in a byte region per polling station, with the SHA-512 of the region. The snapshot can be written to a file and mapped back in memory
+ * after a restart, a region is only decoded when its polling station is asked for.
+ * @author Gael Lalire
+ */
+public final class CitizenListSnapshot implements Closeable {
+
+    private static final int MAGIC = 0x564F5443;
+
+    private static final int VERSION = 1;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static final class Region {
+
+        private long offset;
+
+        private int length;
+
+        private int count;
+
+        private byte[] digest;
+
+        Region(final long offset, final int length, final int count, final byte[] digest) {
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.digest = digest;
+        }
+
+    }
+
+    private Map<String, Region> regionByPollingStationName;
+
+    /**
+     * Data of the in memory snapshot, null if mapped from a file.
+     */
+    private byte[] data;
+
+    private FileChannel fileChannel;
+
+    private Map<String, List<Citizen>> citizenListByPollingStationName = new ConcurrentHashMap<String, List<Citizen>>();
+
+    private CitizenListSnapshot(final Map<String, Region> regionByPollingStationName, final byte[] data, final FileChannel fileChannel) {
+        this.regionByPollingStationName = regionByPollingStationName;
+        this.data = data;
+        this.fileChannel = fileChannel;
+    }
+
+    public boolean contains(final String pollingStationName) {
+        return regionByPollingStationName.containsKey(pollingStationName);
+    }
+
+    public int getPollingStationCount() {
+        return regionByPollingStationName.size();
+    }
+
+    /**
+     * @return the SHA-512 of the encoded citizen list, null if the polling station is unknown
+     */
+    public byte[] getDigest(final String pollingStationName) {
+        Region region = regionByPollingStationName.get(pollingStationName);
+        if (region == null) {
+            return null;
+        }
+        return region.digest.clone();
+    }
+
+    /**
+     * @return an unmodifiable list, null if the polling station is unknown
+     */
+    public List<Citizen> getCitizenList(final String pollingStationName) throws IOException {
+        List<Citizen> citizenList = citizenListByPollingStationName.get(pollingStationName);
+        if (citizenList != null) {
+            return citizenList;
+        }
+        Region region = regionByPollingStationName.get(pollingStationName);
+        if (region == null) {
+            return null;
+        }
+        ByteBuffer byteBuffer;
+        if (data != null) {
+            byteBuffer = ByteBuffer.wrap(data, (int) region.offset, region.length);
+        } else {
+            byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, region.offset, region.length);
+        }
+        // a mapped file may have been altered since it was written
+        if (!MessageDigest.isEqual(region.digest, digest(byteBuffer.duplicate()))) {
+            throw new IOException("Citizen list of " + pollingStationName + " does not match its digest");
+        }
+        List<Citizen> decoded = new ArrayList<Citizen>(region.count);
+        for (int i = 0; i < region.count; i++) {
+            String ssNumber = new String(readBytes(byteBuffer), StandardCharsets.UTF_8);
+            BigInteger publicKeyModulus = new BigInteger(readBytes(byteBuffer));
+            decoded.add(new Citizen(ssNumber, pollingStationName, publicKeyModulus, null, null));
+        }
+        if (byteBuffer.hasRemaining()) {
+            throw new IOException("Corrupted citizen list snapshot");
+        }
+        citizenList = Collections.unmodifiableList(decoded);
+        citizenListByPollingStationName.put(pollingStationName, citizenList);
+        return citizenList;
+    }
+
+    private static MessageDigest createMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] digest(final ByteBuffer byteBuffer) throws IOException {
+        MessageDigest messageDigest = createMessageDigest();
+        messageDigest.update(byteBuffer);
+        return messageDigest.digest();
+    }
+
+    private static void updateDigest(final MessageDigest messageDigest, final byte[] bytes) {
+        messageDigest.update((byte) (bytes.length >>> 8));
+        messageDigest.update((byte) bytes.length);
+        messageDigest.update(bytes);
+    }
+
+    /**
+     * @return the SHA-512 of a citizen list encoded as in a snapshot, to compare with {@link #getDigest(String)}
+     */
+    public static byte[] digest(final List<Citizen> citizenList) throws IOException {
+        MessageDigest messageDigest = createMessageDigest();
+        for (Citizen citizen : citizenList) {
+            updateDigest(messageDigest, citizen.getSsNumber().getBytes(StandardCharsets.UTF_8));
+            updateDigest(messageDigest, citizen.getPublicKeyModulus().toByteArray());
+        }
+        return messageDigest.digest();
+    }
+
+    private static byte[] readBytes(final ByteBuffer byteBuffer) throws IOException {
+        if (byteBuffer.remaining() < 2) {
+            throw new IOException("Corrupted citizen list snapshot");
+        }
+        int length = byteBuffer.getShort() & 0xFFFF;
+        if (length > byteBuffer.remaining()) {
+            throw new IOException("Corrupted citizen list snapshot");
+        }
+        byte[] bytes = new byte[length];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Map a snapshot written by a {@link Builder}.
+     */
+    public static CitizenListSnapshot load(final File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel fileChannel = randomAccessFile.getChannel();
+        try {
+            long size = fileChannel.size();
+            if (size < 12) {
+                throw new IOException("Truncated citizen list snapshot");
+            }
+            ByteBuffer trailer = fileChannel.map(FileChannel.MapMode.READ_ONLY, size - 12, 12);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || indexOffset < 0 || indexOffset > size - 12) {
+                throw new IOException("Not a citizen list snapshot");
+            }
+            ByteBuffer index = fileChannel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - 12 - indexOffset);
+            if (index.getInt() != VERSION) {
+                throw new IOException("Unsupported citizen list snapshot version");
+            }
+            Map<String, Region> regionByPollingStationName = readIndex(index);
+            return new CitizenListSnapshot(regionByPollingStationName, null, fileChannel);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        } catch (RuntimeException e) {
+            randomAccessFile.close();
+            throw new IOException("Corrupted citizen list snapshot", e);
+        }
+    }
+
+    private static Map<String, Region> readIndex(final ByteBuffer index) throws IOException {
+        int pollingStationCount = index.getInt();
+        Map<String, Region> regionByPollingStationName = new HashMap<String, Region>(pollingStationCount * 2);
+        for (int i = 0; i < pollingStationCount; i++) {
+            String name = new String(readBytes(index), StandardCharsets.UTF_8);
+            long offset = index.getLong();
+            int length = index.getInt();
+            int count = index.getInt();
+            byte[] digest = new byte[64];
+            index.get(digest);
+            regionByPollingStationName.put(name, new Region(offset, length, count, digest));
+        }
+        return regionByPollingStationName;
+    }
+
+    /**
+     * Citizens must be added grouped by polling station. The data is streamed to the file (if any) so the whole snapshot is never held in memory.
+     * @author Gael Lalire
+     */
+    public static final class Builder {
+
+        private File file;
+
+        private File tmpFile;
+
+        private ByteArrayOutputStream byteArrayOutputStream;
+
+        private DataOutputStream out;
+
+        private long position;
+
+        private Map<String, Region> regionByPollingStationName = new HashMap<String, Region>();
+
+        private List<String> pollingStationNames = new ArrayList<String>();
+
+        private String currentPollingStationName;
+
+        private long currentOffset;
+
+        private int currentCount;
+
+        private MessageDigest messageDigest;
+
+        /**
+         * @param file where the snapshot is written, null to keep it in memory
+         */
+        public Builder(final File file) throws IOException {
+            this.file = file;
+            OutputStream outputStream;
+            if (file == null) {
+                byteArrayOutputStream = new ByteArrayOutputStream();
+                outputStream = byteArrayOutputStream;
+            } else {
+                tmpFile = new File(file.getPath() + ".tmp");
+                outputStream = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            }
+            out = new DataOutputStream(outputStream);
+            messageDigest = createMessageDigest();
+        }
+
+        public void add(final String pollingStationName, final String ssNumber, final BigInteger publicKeyModulus) throws IOException {
+            if (!pollingStationName.equals(currentPollingStationName)) {
+                endPollingStation();
+                if (regionByPollingStationName.containsKey(pollingStationName)) {
+                    throw new IllegalStateException("Citizens of " + pollingStationName + " are not grouped");
+                }
+                currentPollingStationName = pollingStationName;
+                currentOffset = position;
+                currentCount = 0;
+            }
+            writeBytes(ssNumber.getBytes(StandardCharsets.UTF_8));
+            writeBytes(publicKeyModulus.toByteArray());
+            currentCount++;
+        }
+
+        /**
+         * A polling station without citizen.
+         */
+        public void addEmpty(final String pollingStationName) {
+            if (!regionByPollingStationName.containsKey(pollingStationName) && !pollingStationName.equals(currentPollingStationName)) {
+                endPollingStation();
+                regionByPollingStationName.put(pollingStationName, new Region(position, 0, 0, messageDigest.digest()));
+                pollingStationNames.add(pollingStationName);
+            }
+        }
+
+        private void writeBytes(final byte[] bytes) throws IOException {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            updateDigest(messageDigest, bytes);
+            position += 2 + bytes.length;
+        }
+
+        private void endPollingStation() {
+            if (currentPollingStationName != null) {
+                regionByPollingStationName.put(currentPollingStationName, new Region(currentOffset, (int) (position - currentOffset), currentCount, messageDigest.digest()));
+                pollingStationNames.add(currentPollingStationName);
+                currentPollingStationName = null;
+            }
+        }
+
+        public CitizenListSnapshot build() throws IOException {
+            endPollingStation();
+            long indexOffset = position;
+            out.writeInt(VERSION);
+            out.writeInt(pollingStationNames.size());
+            for (String pollingStationName : pollingStationNames) {
+                Region region = regionByPollingStationName.get(pollingStationName);
+                byte[] name = pollingStationName.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(region.offset);
+                out.writeInt(region.length);
+                out.writeInt(region.count);
+                out.write(region.digest);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.close();
+            if (file == null) {
+                return new CitizenListSnapshot(regionByPollingStationName, byteArrayOutputStream.toByteArray(), null);
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to replace " + file);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmpFile + " to " + file);
+            }
+            return load(file);
+        }
+
+        /**
+         * Drop a snapshot which will not be built.
+         */
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+
+    }
+
+}
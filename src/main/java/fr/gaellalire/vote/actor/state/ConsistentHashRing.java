@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of keys on nodes : each node owns several points of the ring, a key belongs to the node of the first point after its
+ * hash. Adding a node only moves the keys of its new points.
+ * @param <T> node type
+ * @author Gael Lalire
+ */
+public class ConsistentHashRing<T> {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+    /**
+     * Node identity is its position in the list, the order must not change between two runs.
+     */
+    public ConsistentHashRing(final List<T> nodes, final int virtualNodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            T node = nodes.get(i);
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(hash("shard-" + i + "-" + v), node);
+            }
+        }
+    }
+
+    public ConsistentHashRing(final List<T> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public T get(final String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        if (entry == null) {
+            entry = ring.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    public static long hash(final String key) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.service.Citizen;
+import fr.gaellalire.vote.actor.state.service.CitizenApprovalType;
+import fr.gaellalire.vote.actor.state.service.CitizenEnrolment;
+import fr.gaellalire.vote.actor.state.service.CitizenPage;
+import fr.gaellalire.vote.actor.state.service.Party;
+import fr.gaellalire.vote.actor.state.service.PollingStation;
+import fr.gaellalire.vote.actor.state.service.StateService;
+
+/**
+ * State facade over several states, each one holding a part of polling stations with their citizens. Polling stations are placed by a
+ * consistent hash of their name so per polling station calls go to a single shard, other calls are sent to all shards. Parties are known by
+ * all shards. Citizen approvals are only supported between citizens of the same shard.
+ * @author Gael Lalire
+ */
+public class ShardedStateActor extends UnicastRemoteObject implements StateService {
+
+    private static final long serialVersionUID = -6171493402787219213L;
+
+    private static final int SHARD_CURSOR_SHIFT = 48;
+
+    /**
+     * @author Gael Lalire
+     */
+    private interface ShardCall<T> {
+
+        T call(StateService stateService) throws RemoteException;
+
+    }
+
+    private List<StateService> shards;
+
+    private ConsistentHashRing<StateService> ring;
+
+    private ExecutorService executorService;
+
+    public ShardedStateActor(final List<? extends StateService> shards) throws RemoteException {
+        super();
+        this.shards = new ArrayList<StateService>(shards);
+        ring = new ConsistentHashRing<StateService>(this.shards);
+        executorService = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "state-shard-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public StateService getShard(final String pollingStationName) {
+        return ring.get(pollingStationName);
+    }
+
+    private <T> List<T> fanOut(final ShardCall<T> shardCall) throws RemoteException {
+        List<Future<T>> futures = new ArrayList<Future<T>>(shards.size());
+        for (StateService shard : shards) {
+            futures.add(executorService.submit(() -> shardCall.call(shard)));
+        }
+        List<T> results = new ArrayList<T>(shards.size());
+        for (Future<T> future : futures) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    /**
+     * For calls on a citizen which are not routed by polling station : the shards without the citizen fail or return the rejected value.
+     */
+    private <T> T findFirst(final ShardCall<T> shardCall, final T rejected) throws RemoteException {
+        List<Future<T>> futures = new ArrayList<Future<T>>(shards.size());
+        for (StateService shard : shards) {
+            futures.add(executorService.submit(() -> shardCall.call(shard)));
+        }
+        RemoteException lastException = null;
+        for (Future<T> future : futures) {
+            try {
+                T result = get(future);
+                if (result != null && !result.equals(rejected)) {
+                    return result;
+                }
+            } catch (RemoteException e) {
+                lastException = e;
+            }
+        }
+        if (lastException != null) {
+            throw lastException;
+        }
+        return rejected;
+    }
+
+    private static <T> T get(final Future<T> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                throw (RemoteException) cause;
+            }
+            throw new RemoteException(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void setPollingStationData(final String pollingStationName, final VotingModulusList votingModulusList, final VotingSignatureList votingSignatureList)
+            throws RemoteException {
+        getShard(pollingStationName).setPollingStationData(pollingStationName, votingModulusList, votingSignatureList);
+    }
+
+    @Override
+    public PollingStation searchPollingStationByVotePublicModulus(final BigInteger votePublicModulus) throws RemoteException {
+        return findFirst(shard -> shard.searchPollingStationByVotePublicModulus(votePublicModulus), null);
+    }
+
+    @Override
+    public PollingStation getPollingStation(final String name) throws RemoteException {
+        return getShard(name).getPollingStation(name);
+    }
+
+    @Override
+    public List<Citizen> getPollingStationCitizenList(final String pollingStationName) throws RemoteException {
+        return getShard(pollingStationName).getPollingStationCitizenList(pollingStationName);
+    }
+
+    @Override
+    public byte[] getPollingStationCitizenListDigest(final String pollingStationName) throws RemoteException {
+        return getShard(pollingStationName).getPollingStationCitizenListDigest(pollingStationName);
+    }
+
+    @Override
+    public List<Citizen> getCitizenList() throws RemoteException {
+        List<Citizen> citizens = new ArrayList<Citizen>();
+        for (List<Citizen> shardCitizens : fanOut(shard -> shard.getCitizenList())) {
+            citizens.addAll(shardCitizens);
+        }
+        return citizens;
+    }
+
+    /**
+     * Pages go through the shards one after the other, the shard index is kept in the high bits of the cursor.
+     */
+    @Override
+    public CitizenPage getCitizenPage(final long afterId, final int limit) throws RemoteException {
+        int shardIndex = (int) (afterId >>> SHARD_CURSOR_SHIFT);
+        long shardAfterId = afterId & ((1L << SHARD_CURSOR_SHIFT) - 1);
+        while (shardIndex < shards.size()) {
+            CitizenPage page = shards.get(shardIndex).getCitizenPage(shardAfterId, limit);
+            boolean lastShard = shardIndex == shards.size() - 1;
+            if (!page.isLast()) {
+                return new CitizenPage(page.getCitizens(), ((long) shardIndex << SHARD_CURSOR_SHIFT) | page.getNextAfterId(), false);
+            }
+            if (lastShard) {
+                return new CitizenPage(page.getCitizens(), ((long) shardIndex << SHARD_CURSOR_SHIFT) | page.getNextAfterId(), true);
+            }
+            if (!page.getCitizens().isEmpty()) {
+                return new CitizenPage(page.getCitizens(), (long) (shardIndex + 1) << SHARD_CURSOR_SHIFT, false);
+            }
+            shardIndex++;
+            shardAfterId = 0;
+        }
+        return new CitizenPage(new ArrayList<Citizen>(), afterId, true);
+    }
+
+    @Override
+    public List<PollingStation> getPollingStationList() throws RemoteException {
+        List<PollingStation> pollingStations = new ArrayList<PollingStation>();
+        for (List<PollingStation> shardPollingStations : fanOut(shard -> shard.getPollingStationList())) {
+            pollingStations.addAll(shardPollingStations);
+        }
+        return pollingStations;
+    }
+
+    @Override
+    public Citizen getCitizen(final String ssNumber) throws RemoteException {
+        return findFirst(shard -> shard.getCitizen(ssNumber), null);
+    }
+
+    @Override
+    public List<Party> getPartyList() throws RemoteException {
+        // all shards have the parties
+        return shards.get(0).getPartyList();
+    }
+
+    @Override
+    public byte[] generateApproval(final String approbatorSSNumber, final String approvedSSNumber, final CitizenApprovalType citizenApprovalType) throws RemoteException {
+        return shards.get(0).generateApproval(approbatorSSNumber, approvedSSNumber, citizenApprovalType);
+    }
+
+    @Override
+    public boolean approve(final String approbatorSSNumber, final String approvedSSNumber, final CitizenApprovalType citizenApprovalType, final byte[] signature)
+            throws RemoteException {
+        return findFirst(shard -> shard.approve(approbatorSSNumber, approvedSSNumber, citizenApprovalType, signature), Boolean.FALSE);
+    }
+
+    @Override
+    public void addParty(final String name, final String host, final String rmiName, final BigInteger publicKeyModulus) throws RemoteException {
+        fanOut(shard -> {
+            shard.addParty(name, host, rmiName, publicKeyModulus);
+            return null;
+        });
+    }
+
+    @Override
+    public void addPollingStation(final String name, final String host, final String rmiName, final byte[] publicKeyModulusSha512) throws RemoteException {
+        getShard(name).addPollingStation(name, host, rmiName, publicKeyModulusSha512);
+    }
+
+    @Override
+    public void addCitizen(final String ssNumber, final String pollingStationName, final BigInteger publicKeyModulus) throws RemoteException {
+        getShard(pollingStationName).addCitizen(ssNumber, pollingStationName, publicKeyModulus);
+    }
+
+    @Override
+    public void addCitizens(final List<CitizenEnrolment> citizenEnrolments) throws RemoteException {
+        Map<StateService, List<CitizenEnrolment>> enrolmentsByShard = new IdentityHashMap<StateService, List<CitizenEnrolment>>();
+        for (CitizenEnrolment citizenEnrolment : citizenEnrolments) {
+            StateService shard = getShard(citizenEnrolment.getPollingStationName());
+            List<CitizenEnrolment> shardEnrolments = enrolmentsByShard.get(shard);
+            if (shardEnrolments == null) {
+                shardEnrolments = new ArrayList<CitizenEnrolment>();
+                enrolmentsByShard.put(shard, shardEnrolments);
+            }
+            shardEnrolments.add(citizenEnrolment);
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(enrolmentsByShard.size());
+        for (Map.Entry<StateService, List<CitizenEnrolment>> entry : enrolmentsByShard.entrySet()) {
+            futures.add(executorService.submit(() -> {
+                entry.getKey().addCitizens(entry.getValue());
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures) {
+            get(future);
+        }
+    }
+
+    @Override
+    public boolean verifyCitizen(final String ssNumber, final byte[] biometricData) throws RemoteException {
+        return findFirst(shard -> shard.verifyCitizen(ssNumber, biometricData), Boolean.FALSE);
+    }
+
+    /**
+     * Cache polling station citizen lists of the shards running in this JVM.
+     */
+    public void initVote() throws IOException {
+        for (StateService shard : shards) {
+            if (shard instanceof StateActor) {
+                ((StateActor) shard).initVote();
+            }
+        }
+    }
+
+    public static ShardedStateActor create(final List<? extends StateService> shards, final String host) throws Exception {
+        return create(shards, host, null);
+    }
+
+    public static ShardedStateActor create(final List<? extends StateService> shards, final String host, final RMIOverrides rmiOverrides) throws Exception {
+        ShardedStateActor shardedStateActor = new ShardedStateActor(shards);
+        try {
+            if (rmiOverrides == null || !rmiOverrides.bind("State", shardedStateActor)) {
+                Registry registry = LocateRegistry.getRegistry(host);
+                registry.rebind("State", shardedStateActor);
+            }
+        } catch (Exception e) {
+            shardedStateActor.close();
+            throw e;
+        }
+        return shardedStateActor;
+    }
+
+    /**
+     * Shards are not closed.
+     */
+    public void close() {
+        executorService.shutdown();
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // ignore
+        }
+    }
+
+}
@@ -16,7 +16,8 @@
 
 package fr.gaellalire.vote.actor.state;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.net.InetAddress;
@@ -27,9 +28,13 @@ import java.security.SecureRandom;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
@@ -38,14 +43,19 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.Metamodel;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.hibernate.annotations.QueryHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import fr.gaellalire.vestige.spi.trust.TrustException;
 import fr.gaellalire.vote.actor.RemoteActor;
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
 import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
 import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
 import fr.gaellalire.vote.actor.state.jpa.Citizen;
@@ -54,8 +64,13 @@ import fr.gaellalire.vote.actor.state.jpa.CitizenApprovalType;
 import fr.gaellalire.vote.actor.state.jpa.Party;
 import fr.gaellalire.vote.actor.state.jpa.PollingStation;
 import fr.gaellalire.vote.actor.state.service.Approval;
+import fr.gaellalire.vote.actor.state.service.CitizenEnrolment;
+import fr.gaellalire.vote.actor.state.service.CitizenPage;
 import fr.gaellalire.vote.actor.state.service.StateService;
-import fr.gaellalire.vote.trust.rsa.RSAPublicPart;
+import fr.gaellalire.vote.trust.SignaturePublicPart;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.SignatureVerifier;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 // 67 millions (3 millions a paris)
@@ -63,13 +78,37 @@ import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 // 67 000 bureaux ...
 public class StateActor extends RemoteActor implements StateService {
 
+    /**
+     * Query cache region of the party and polling station lists.
+     */
+    public static final String REFERENCE_QUERY_REGION = "fr.gaellalire.vote.actor.state.reference";
+
     private static final long serialVersionUID = 932148319038559136L;
 
-    private RSATrustSystem rsaTrustSystem;
+    private static final Logger LOGGER = LoggerFactory.getLogger(StateActor.class);
+
+    private static final int CITIZEN_FETCH_SIZE = 1000;
+
+    public static final int DEFAULT_ENROLMENT_CHUNK_SIZE = 1000;
+
+    public static final int DEFAULT_CITIZEN_PAGE_SIZE = 1000;
+
+    public static final int MAX_CITIZEN_PAGE_SIZE = 10000;
+
+    private SignatureTrustSystem citizenTrustSystem;
 
-    public StateActor(final EntityManagerFactory entityManagerFactory, final RSATrustSystem rsaTrustSystem) throws RemoteException {
+    private SignatureVerifier signatureVerifier;
+
+    private int enrolmentChunkSize = DEFAULT_ENROLMENT_CHUNK_SIZE;
+
+    private Map<String, Long> pollingStationIdByName = new ConcurrentHashMap<String, Long>();
+
+    private Map<String, Object> pollingStationDataLockByName = new ConcurrentHashMap<String, Object>();
+
+    public StateActor(final EntityManagerFactory entityManagerFactory, final SignatureTrustSystem citizenTrustSystem) throws RemoteException {
         super(entityManagerFactory);
-        this.rsaTrustSystem = rsaTrustSystem;
+        this.citizenTrustSystem = citizenTrustSystem;
+        signatureVerifier = new SignatureVerifier(citizenTrustSystem);
     }
 
     @Override
@@ -80,6 +119,7 @@ public class StateActor extends RemoteActor implements StateService {
         getEntityManager().persist(pollingStation);
 
         commit();
+        evictReferenceCache(Party.class);
     }
 
     public void addPollingStation(final String name, final String host, final String rmiName, final byte[] publicKeyModulusSha512) {
@@ -89,20 +129,96 @@ public class StateActor extends RemoteActor implements StateService {
         getEntityManager().persist(pollingStation);
 
         commit();
+        evictReferenceCache(PollingStation.class);
+    }
+
+    /**
+     * Hibernate already invalidates the cached queries when the tables change, this also drops them when data is added from another process (for
+     * example by a database import).
+     */
+    public void evictReferenceCache(final Class<?> entityClass) {
+        Cache cache = getEntityManager().getEntityManagerFactory().getCache();
+        cache.evict(entityClass);
+        cache.unwrap(org.hibernate.Cache.class).evictQueryRegion(REFERENCE_QUERY_REGION);
+    }
+
+    private static <T> TypedQuery<T> cacheable(final TypedQuery<T> typedQuery) {
+        typedQuery.setHint(QueryHints.CACHEABLE, true);
+        typedQuery.setHint(QueryHints.CACHE_REGION, REFERENCE_QUERY_REGION);
+        return typedQuery;
+    }
+
+    public void setEnrolmentChunkSize(final int enrolmentChunkSize) {
+        this.enrolmentChunkSize = enrolmentChunkSize;
     }
 
     public void addCitizen(final String ssNumber, final String pollingStationName, final BigInteger publicKeyModulus) {
+        dropCitizenListSnapshot();
         beginTransaction();
 
-        PollingStation pollingStation = getPollingStationByName(pollingStationName);
+        persistCitizen(ssNumber, pollingStationName, publicKeyModulus);
+
+        commit();
+    }
+
+    @Override
+    public void addCitizens(final List<CitizenEnrolment> citizenEnrolments) {
+        dropCitizenListSnapshot();
+        EntityManager entityManager = getEntityManager();
+        beginTransaction();
+        try {
+            int chunkCount = 0;
+            for (CitizenEnrolment citizenEnrolment : citizenEnrolments) {
+                persistCitizen(citizenEnrolment.getSsNumber(), citizenEnrolment.getPollingStationName(), citizenEnrolment.getPublicKeyModulus());
+                chunkCount++;
+                if (chunkCount == enrolmentChunkSize) {
+                    // inserts are sent by JDBC batch at flush, clear to keep the persistence context small
+                    entityManager.flush();
+                    commit();
+                    entityManager.clear();
+                    chunkCount = 0;
+                    beginTransaction();
+                }
+            }
+            entityManager.flush();
+            commit();
+            entityManager.clear();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                rollback();
+            }
+        }
+    }
+
+    private void persistCitizen(final String ssNumber, final String pollingStationName, final BigInteger publicKeyModulus) {
+        EntityManager entityManager = getEntityManager();
 
         Citizen citizen = new Citizen();
         citizen.setSSNumber(ssNumber);
         citizen.setPublicKeyModulus(publicKeyModulus);
-        citizen.setPollingStation(pollingStation);
-        getEntityManager().persist(citizen);
+        citizen.setPollingStation(entityManager.getReference(PollingStation.class, getPollingStationIdByName(pollingStationName)));
+        entityManager.persist(citizen);
+    }
 
-        commit();
+    public long getPollingStationIdByName(final String name) {
+        Long id = pollingStationIdByName.get(name);
+        if (id != null) {
+            return id;
+        }
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<PollingStation> rootPollingStation = query.from(PollingStation.class);
+        ParameterExpression<String> nameParameter = criteriaBuilder.parameter(String.class, "name");
+
+        query.select(rootPollingStation.<Long> get("id")).where(criteriaBuilder.equal(rootPollingStation.get("name"), nameParameter));
+
+        TypedQuery<Long> typedQuery = cacheable(entityManager.createQuery(query));
+        typedQuery.setParameter("name", name);
+        id = typedQuery.getSingleResult();
+        // polling station id never change
+        pollingStationIdByName.put(name, id);
+        return id;
     }
 
     @Override
@@ -114,12 +230,16 @@ public class StateActor extends RemoteActor implements StateService {
 
         query.select(rootPollingStation);
 
-        TypedQuery<PollingStation> typedQuery = getEntityManager().createQuery(query);
+        TypedQuery<PollingStation> typedQuery = cacheable(entityManager.createQuery(query));
         List<PollingStation> resultList = typedQuery.getResultList();
+        Map<Long, List<String>> ssNumbersByPollingStationId = getSSNumbersByPollingStationId();
         List<fr.gaellalire.vote.actor.state.service.PollingStation> result = new ArrayList<fr.gaellalire.vote.actor.state.service.PollingStation>();
         for (PollingStation pollingStation : resultList) {
-            entityManager.refresh(pollingStation);
-            result.add(convertToServicePollingStation(pollingStation));
+            List<String> ssNumbers = ssNumbersByPollingStationId.get(pollingStation.getId());
+            if (ssNumbers == null) {
+                ssNumbers = new ArrayList<String>();
+            }
+            result.add(convertToServicePollingStation(pollingStation, ssNumbers));
         }
         return result;
     }
@@ -133,16 +253,32 @@ public class StateActor extends RemoteActor implements StateService {
 
         query.select(rootParty);
 
-        TypedQuery<Party> typedQuery = getEntityManager().createQuery(query);
+        TypedQuery<Party> typedQuery = cacheable(entityManager.createQuery(query));
         List<Party> resultList = typedQuery.getResultList();
         List<fr.gaellalire.vote.actor.state.service.Party> result = new ArrayList<fr.gaellalire.vote.actor.state.service.Party>();
         for (Party party : resultList) {
-            entityManager.refresh(party);
             result.add(new fr.gaellalire.vote.actor.state.service.Party(party.getName(), party.getHost(), party.getRmiName()));
         }
         return result;
     }
 
+    /**
+     * From the second level cache, collections may be stale : use {@link #getPollingStationByName(String)} to read them.
+     */
+    public PollingStation findPollingStationByName(final String name) {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PollingStation> query = criteriaBuilder.createQuery(PollingStation.class);
+        Root<PollingStation> rootPollingStation = query.from(PollingStation.class);
+        ParameterExpression<String> nameParameter = criteriaBuilder.parameter(String.class, "name");
+
+        query.select(rootPollingStation).where(criteriaBuilder.equal(rootPollingStation.get("name"), nameParameter));
+
+        TypedQuery<PollingStation> typedQuery = cacheable(entityManager.createQuery(query));
+        typedQuery.setParameter("name", name);
+        return typedQuery.getSingleResult();
+    }
+
     public PollingStation getPollingStationByName(final String name) {
         EntityManager entityManager = getEntityManager();
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
@@ -198,12 +334,10 @@ public class StateActor extends RemoteActor implements StateService {
             return false;
         }
 
-        RSAPublicPart approbatorPublicPart = rsaTrustSystem.publicPartByModulus(approbatorCitizen.getPublicKeyModulus());
-
         boolean verified;
         try {
-            verified = approbatorPublicPart.verify(new ByteArrayInputStream(generateApproval(approbatorSSNumber, approvedSSNumber, citizenApprovalType)),
-                    new ByteArrayInputStream(signature));
+            SignaturePublicPart approbatorPublicPart = citizenTrustSystem.publicPartByKey(approbatorCitizen.getPublicKeyModulus());
+            verified = approbatorPublicPart.verify(generateApproval(approbatorSSNumber, approvedSSNumber, citizenApprovalType), signature);
         } catch (Exception e) {
             verified = false;
         }
@@ -264,18 +398,63 @@ public class StateActor extends RemoteActor implements StateService {
         return convertToServicePollingStation(pollingStation);
     }
 
-    public fr.gaellalire.vote.actor.state.service.PollingStation convertToServicePollingStation(final PollingStation pollingStation) {
-        List<Citizen> citizens = pollingStation.getCitizens();
-        List<String> ssNumbers = new ArrayList<String>();
-        for (Citizen citizen : citizens) {
-            ssNumbers.add(citizen.getSSNumber());
+    public List<String> getPollingStationSSNumbers(final PollingStation pollingStation) {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<String> query = criteriaBuilder.createQuery(String.class);
+        Root<Citizen> rootCitizen = query.from(Citizen.class);
+        ParameterExpression<PollingStation> pollingStationParameter = criteriaBuilder.parameter(PollingStation.class, "pollingStation");
+
+        query.select(rootCitizen.<String> get("ssNumber")).where(criteriaBuilder.equal(rootCitizen.get("pollingStation"), pollingStationParameter));
+
+        TypedQuery<String> typedQuery = entityManager.createQuery(query);
+        typedQuery.setParameter("pollingStation", pollingStation);
+        return typedQuery.getResultList();
+    }
+
+    /**
+     * The ssNumbers of the citizens of all polling stations, read by a single query instead of one by polling station.
+     */
+    private Map<Long, List<String>> getSSNumbersByPollingStationId() {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<Citizen> rootCitizen = query.from(Citizen.class);
+        Join<Citizen, PollingStation> rootPollingStation = rootCitizen.join("pollingStation");
+
+        query.multiselect(rootPollingStation.get("id"), rootCitizen.get("ssNumber"));
+        query.orderBy(criteriaBuilder.asc(rootPollingStation.get("id")), criteriaBuilder.asc(rootCitizen.get("id")));
+
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+        typedQuery.setHint(QueryHints.FETCH_SIZE, CITIZEN_FETCH_SIZE);
+        typedQuery.setHint(QueryHints.READ_ONLY, true);
+        Map<Long, List<String>> ssNumbersByPollingStationId = new HashMap<Long, List<String>>();
+        Stream<Object[]> stream = typedQuery.getResultStream();
+        try {
+            Iterator<Object[]> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                ssNumbersByPollingStationId.computeIfAbsent((Long) row[0], id -> new ArrayList<String>()).add((String) row[1]);
+            }
+        } finally {
+            stream.close();
         }
+        return ssNumbersByPollingStationId;
+    }
+
+    public fr.gaellalire.vote.actor.state.service.PollingStation convertToServicePollingStation(final PollingStation pollingStation) {
+        // the citizens collection of a cached polling station may be stale, ask the database
+        return convertToServicePollingStation(pollingStation, new ArrayList<String>(getPollingStationSSNumbers(pollingStation)));
+    }
+
+    private static fr.gaellalire.vote.actor.state.service.PollingStation convertToServicePollingStation(final PollingStation pollingStation,
+            final List<String> ssNumbers) {
         return new fr.gaellalire.vote.actor.state.service.PollingStation(pollingStation.getName(), pollingStation.getHost(), pollingStation.getRmiName(),
                 pollingStation.getPublicKeyModulusSha512(), ssNumbers);
     }
 
     public fr.gaellalire.vote.actor.state.service.PollingStation getPollingStation(final String name) {
-        PollingStation pollingStation = getPollingStationByName(name);
+        PollingStation pollingStation = findPollingStationByName(name);
         return convertToServicePollingStation(pollingStation);
     }
 
@@ -300,19 +479,25 @@ public class StateActor extends RemoteActor implements StateService {
     }
 
     public fr.gaellalire.vote.actor.state.service.Citizen getCitizen(final String ssNumber) {
+        // only columns which never change are read, no refresh needed
         Citizen citizenBySS = getCitizenBySS(ssNumber);
-        getEntityManager().refresh(citizenBySS);
         return convertToServiceCitizen(citizenBySS, false);
     }
 
-    public static StateActor create(final RSATrustSystem rsaTrustSystem, final String host, final Map<String, String> entityManagerProperties) throws Exception {
-        Registry registry = LocateRegistry.getRegistry(host);
+    public static StateActor create(final SignatureTrustSystem citizenTrustSystem, final String host, final Map<String, String> entityManagerProperties) throws Exception {
+        return create(citizenTrustSystem, host, entityManagerProperties, null);
+    }
 
+    public static StateActor create(final SignatureTrustSystem citizenTrustSystem, final String host, final Map<String, String> entityManagerProperties,
+            final RMIOverrides rmiOverrides) throws Exception {
         EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("statePersistenceUnit", entityManagerProperties);
 
-        StateActor stateActor = new StateActor(entityManagerFactory, rsaTrustSystem);
+        StateActor stateActor = new StateActor(entityManagerFactory, citizenTrustSystem);
         try {
-            registry.rebind("State", stateActor);
+            if (rmiOverrides == null || !rmiOverrides.bind("State", stateActor)) {
+                Registry registry = LocateRegistry.getRegistry(host);
+                registry.rebind("State", stateActor);
+            }
         } catch (Exception e) {
             stateActor.close();
             throw e;
@@ -323,7 +508,7 @@ public class StateActor extends RemoteActor implements StateService {
     public static void main(final String[] args) throws Exception {
         Security.addProvider(new BouncyCastleProvider());
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
 
@@ -337,9 +522,19 @@ public class StateActor extends RemoteActor implements StateService {
 
     @Override
     public void setPollingStationData(final String pollingStationName, final VotingModulusList votingModulusList, final VotingSignatureList signatureList) throws RemoteException {
-        PollingStation pollingStation = getPollingStationByName(pollingStationName);
+        Object lock = pollingStationDataLockByName.computeIfAbsent(pollingStationName, name -> new Object());
+        // a polling station whose call timed out sends its data again, maybe while the first call is still saving it
+        synchronized (lock) {
+            savePollingStationData(pollingStationName, votingModulusList, signatureList);
+        }
+    }
 
-        byte[] encoded = votingModulusList.getEncoded();
+    private void savePollingStationData(final String pollingStationName, final VotingModulusList votingModulusList, final VotingSignatureList signatureList) {
+        PollingStation pollingStation = getPollingStationByName(pollingStationName);
+        if (!pollingStation.getModulus().isEmpty()) {
+            // already saved, the polling station sends its data again when it did not get our answer
+            return;
+        }
 
         Map<String, byte[]> signatureBySSNumber = signatureList.getSignatureBySSNumber();
 
@@ -349,36 +544,39 @@ public class StateActor extends RemoteActor implements StateService {
             return;
         }
 
-        beginTransaction();
-
+        List<BigInteger> citizenModulus = new ArrayList<BigInteger>(citizens.size());
+        List<byte[]> signatures = new ArrayList<byte[]>(citizens.size());
         for (Citizen citizen : citizens) {
-            String ssNumber = citizen.getSSNumber();
-            byte[] signature = signatureBySSNumber.get(ssNumber);
+            byte[] signature = signatureBySSNumber.get(citizen.getSSNumber());
             if (signature == null) {
                 // invalid list
-                rollback();
                 return;
             }
-            RSAPublicPart rsaPublicPart = rsaTrustSystem.publicPartByModulus(citizen.getPublicKeyModulus());
-            try {
-                if (!rsaPublicPart.verify(new ByteArrayInputStream(encoded), new ByteArrayInputStream(signature))) {
-                    // invalid list
-                    rollback();
-                    return;
-                }
-            } catch (TrustException e) {
+            citizenModulus.add(citizen.getPublicKeyModulus());
+            signatures.add(signature);
+        }
+
+        try {
+            if (!signatureVerifier.verifyAllDigest(votingModulusList.getSha512(), citizenModulus, signatures)) {
                 // invalid list
-                rollback();
                 return;
             }
-            citizen.setPollingStationModulusListSignature(signature);
+        } catch (TrustException e) {
+            // invalid list
+            return;
+        }
+
+        beginTransaction();
+
+        for (int i = 0; i < citizens.size(); i++) {
+            citizens.get(i).setPollingStationModulusListSignature(signatures.get(i));
         }
 
         // list is signed by all citizen of pollingStation, we can save it
 
         List<String> modulus = pollingStation.getModulus();
-        for (BigInteger bigInteger : votingModulusList.getModulus()) {
-            modulus.add(bigInteger.toString(16));
+        for (int i = 0; i < votingModulusList.size(); i++) {
+            modulus.add(votingModulusList.getModulusHex(i));
         }
 
         commit();
@@ -387,24 +585,113 @@ public class StateActor extends RemoteActor implements StateService {
 
     @Override
     public List<fr.gaellalire.vote.actor.state.service.Citizen> getCitizenList() throws RemoteException {
+        List<fr.gaellalire.vote.actor.state.service.Citizen> result = new ArrayList<fr.gaellalire.vote.actor.state.service.Citizen>();
+        CitizenPage citizenPage;
+        long afterId = 0;
+        do {
+            citizenPage = getCitizenPage(afterId, DEFAULT_CITIZEN_PAGE_SIZE);
+            result.addAll(citizenPage.getCitizens());
+            afterId = citizenPage.getNextAfterId();
+        } while (!citizenPage.isLast());
+        return result;
+    }
+
+    @Override
+    public CitizenPage getCitizenPage(final long afterId, final int limit) throws RemoteException {
+        int pageSize = Math.max(1, Math.min(limit, MAX_CITIZEN_PAGE_SIZE));
         EntityManager entityManager = getEntityManager();
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<Citizen> query = criteriaBuilder.createQuery(Citizen.class);
-        Root<Citizen> rootPollingStation = query.from(Citizen.class);
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<Citizen> rootCitizen = query.from(Citizen.class);
+        Join<Citizen, PollingStation> rootPollingStation = rootCitizen.join("pollingStation");
+        ParameterExpression<Long> afterIdParameter = criteriaBuilder.parameter(Long.class, "afterId");
+
+        // projection only, no entity is managed so memory does not grow with the number of pages
+        query.multiselect(rootCitizen.get("id"), rootCitizen.get("ssNumber"), rootPollingStation.get("name"), rootCitizen.get("publicKeyModulus"));
+        query.where(criteriaBuilder.gt(rootCitizen.<Long> get("id"), afterIdParameter));
+        query.orderBy(criteriaBuilder.asc(rootCitizen.get("id")));
+
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+        typedQuery.setParameter("afterId", afterId);
+        // one more row tells if there is a next page
+        typedQuery.setMaxResults(pageSize + 1);
+        List<Object[]> rows = typedQuery.getResultList();
+        boolean last = rows.size() <= pageSize;
+        if (!last) {
+            rows = rows.subList(0, pageSize);
+        }
+        List<fr.gaellalire.vote.actor.state.service.Citizen> citizens = new ArrayList<fr.gaellalire.vote.actor.state.service.Citizen>(rows.size());
+        if (rows.isEmpty()) {
+            return new CitizenPage(citizens, afterId, true);
+        }
 
-        query.select(rootPollingStation);
+        long firstId = (Long) rows.get(0)[0];
+        long lastId = (Long) rows.get(rows.size() - 1)[0];
+        Map<Long, List<Approval>> approbatorOfById = getApprovals(firstId, lastId, "approbator", "approved");
+        Map<Long, List<Approval>> approvedByById = getApprovals(firstId, lastId, "approved", "approbator");
+        for (Object[] row : rows) {
+            Long id = (Long) row[0];
+            citizens.add(new fr.gaellalire.vote.actor.state.service.Citizen((String) row[1], (String) row[2], new BigInteger((String) row[3], 16),
+                    approvalList(approvedByById, id), approvalList(approbatorOfById, id)));
+        }
+        return new CitizenPage(citizens, lastId, last);
+    }
 
-        TypedQuery<Citizen> typedQuery = getEntityManager().createQuery(query);
-        List<Citizen> resultList = typedQuery.getResultList();
-        List<fr.gaellalire.vote.actor.state.service.Citizen> result = new ArrayList<fr.gaellalire.vote.actor.state.service.Citizen>();
-        for (Citizen citizen : resultList) {
-            entityManager.refresh(citizen);
-            result.add(convertToServiceCitizen(citizen, true));
+    private static List<Approval> approvalList(final Map<Long, List<Approval>> approvalsById, final Long id) {
+        List<Approval> approvals = approvalsById.get(id);
+        if (approvals == null) {
+            return new ArrayList<Approval>();
         }
-        return result;
+        return approvals;
     }
 
-    private volatile boolean voteInitiated = false;
+    /**
+     * Approvals of all citizens with an id between firstId and lastId, in one query.
+     * @param citizenSide side of the approval where the citizens of the page are
+     * @param otherSide side of the approval whose ssNumber is returned
+     */
+    private Map<Long, List<Approval>> getApprovals(final long firstId, final long lastId, final String citizenSide, final String otherSide) {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<CitizenApproval> rootCitizenApproval = query.from(CitizenApproval.class);
+        Path<Long> citizenId = rootCitizenApproval.get("primaryKey").get(citizenSide).<Long> get("id");
+        ParameterExpression<Long> firstIdParameter = criteriaBuilder.parameter(Long.class, "firstId");
+        ParameterExpression<Long> lastIdParameter = criteriaBuilder.parameter(Long.class, "lastId");
+
+        query.multiselect(citizenId, rootCitizenApproval.get("primaryKey").get(otherSide).get("ssNumber"), rootCitizenApproval.get("signature"),
+                rootCitizenApproval.get("approvalType"));
+        query.where(criteriaBuilder.between(citizenId, firstIdParameter, lastIdParameter));
+
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+        typedQuery.setParameter("firstId", firstId);
+        typedQuery.setParameter("lastId", lastId);
+        Map<Long, List<Approval>> approvalsById = new HashMap<Long, List<Approval>>();
+        for (Object[] row : typedQuery.getResultList()) {
+            List<Approval> approvals = approvalsById.get(row[0]);
+            if (approvals == null) {
+                approvals = new ArrayList<Approval>();
+                approvalsById.put((Long) row[0], approvals);
+            }
+            approvals.add(new Approval((byte[]) row[2], (String) row[1],
+                    fr.gaellalire.vote.actor.state.service.CitizenApprovalType.valueOf(((CitizenApprovalType) row[3]).name())));
+        }
+        return approvalsById;
+    }
+
+    /**
+     * Null until the vote is initiated.
+     */
+    private volatile CitizenListSnapshot citizenListSnapshot;
+
+    /**
+     * The snapshot replaced last, RMI threads may still decode it so it is only closed by the next {@link #initVote()} or replacement.
+     */
+    private CitizenListSnapshot retiredCitizenListSnapshot;
+
+    private Object citizenListSnapshotMutex = new Object();
+
+    private File citizenListSnapshotFile;
 
     public List<fr.gaellalire.vote.actor.state.service.Citizen> internalGetPollingStationCitizenList(final String pollingStationName) {
         EntityManager entityManager = getEntityManager();
@@ -427,7 +714,7 @@ public class StateActor extends RemoteActor implements StateService {
         List<Citizen> resultList = typedQuery.getResultList();
         List<fr.gaellalire.vote.actor.state.service.Citizen> result = new ArrayList<fr.gaellalire.vote.actor.state.service.Citizen>();
         for (Citizen citizen : resultList) {
-            entityManager.refresh(citizen);
+            // only columns which never change are read, no refresh needed
             result.add(convertToServiceCitizen(citizen, false));
         }
         return result;
@@ -435,8 +722,14 @@ public class StateActor extends RemoteActor implements StateService {
 
     @Override
     public List<fr.gaellalire.vote.actor.state.service.Citizen> getPollingStationCitizenList(final String pollingStationName) throws RemoteException {
-        if (voteInitiated) {
-            List<fr.gaellalire.vote.actor.state.service.Citizen> list = citizenListByPollingStationNameCache.get(pollingStationName);
+        CitizenListSnapshot snapshot = citizenListSnapshot;
+        if (snapshot != null) {
+            List<fr.gaellalire.vote.actor.state.service.Citizen> list;
+            try {
+                list = snapshot.getCitizenList(pollingStationName);
+            } catch (IOException e) {
+                throw new RemoteException("Unable to read citizen list of " + pollingStationName, e);
+            }
             if (list != null) {
                 return list;
             }
@@ -446,16 +739,135 @@ public class StateActor extends RemoteActor implements StateService {
         return internalGetPollingStationCitizenList(pollingStationName);
     }
 
-    private Map<String, List<fr.gaellalire.vote.actor.state.service.Citizen>> citizenListByPollingStationNameCache = new HashMap<String, List<fr.gaellalire.vote.actor.state.service.Citizen>>();
+    @Override
+    public byte[] getPollingStationCitizenListDigest(final String pollingStationName) throws RemoteException {
+        CitizenListSnapshot snapshot = citizenListSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getDigest(pollingStationName);
+    }
+
+    /**
+     * @param citizenListSnapshotFile where {@link #initVote()} writes the citizen lists, null to keep them in memory
+     */
+    public void setCitizenListSnapshotFile(final File citizenListSnapshotFile) {
+        this.citizenListSnapshotFile = citizenListSnapshotFile;
+    }
+
+    /**
+     * Restore the citizen lists written by {@link #initVote()} before a restart, the vote is then initiated without any query.
+     * @return true if the snapshot file was loaded
+     */
+    public boolean loadCitizenListSnapshot() {
+        if (citizenListSnapshotFile == null || !citizenListSnapshotFile.isFile()) {
+            return false;
+        }
+        try {
+            replaceCitizenListSnapshot(CitizenListSnapshot.load(citizenListSnapshotFile));
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring citizen list snapshot " + citizenListSnapshotFile, e);
+            return false;
+        }
+        LOGGER.info("Citizen lists of {} polling stations restored", citizenListSnapshot.getPollingStationCount());
+        return true;
+    }
 
-    public void initVote() {
-        List<fr.gaellalire.vote.actor.state.service.PollingStation> pollingStationList = getPollingStationList();
-        for (fr.gaellalire.vote.actor.state.service.PollingStation pollingStation : pollingStationList) {
-            String name = pollingStation.getName();
-            citizenListByPollingStationNameCache.put(name, internalGetPollingStationCitizenList(name));
+    private void replaceCitizenListSnapshot(final CitizenListSnapshot snapshot) {
+        synchronized (citizenListSnapshotMutex) {
+            CitizenListSnapshot previous = citizenListSnapshot;
+            citizenListSnapshot = snapshot;
+            if (previous != null) {
+                closeRetiredCitizenListSnapshot();
+                retiredCitizenListSnapshot = previous;
+            }
         }
+    }
 
-        voteInitiated = true;
+    private void closeRetiredCitizenListSnapshot() {
+        synchronized (citizenListSnapshotMutex) {
+            if (retiredCitizenListSnapshot == null) {
+                return;
+            }
+            try {
+                retiredCitizenListSnapshot.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close citizen list snapshot", e);
+            }
+            retiredCitizenListSnapshot = null;
+        }
+    }
+
+    /**
+     * A citizen added after the vote was initiated makes the snapshot wrong, it is dropped until the next {@link #initVote()}.
+     */
+    private void dropCitizenListSnapshot() {
+        if (citizenListSnapshot == null) {
+            return;
+        }
+        synchronized (citizenListSnapshotMutex) {
+            if (citizenListSnapshot == null) {
+                return;
+            }
+            replaceCitizenListSnapshot(null);
+            if (citizenListSnapshotFile != null && citizenListSnapshotFile.isFile() && !citizenListSnapshotFile.delete()) {
+                LOGGER.warn("Unable to delete citizen list snapshot {}", citizenListSnapshotFile);
+            }
+        }
+    }
+
+    /**
+     * Freeze the citizen list of every polling station. Citizens are read by a single query ordered by polling station and streamed to the
+     * snapshot, no entity is loaded.
+     */
+    public void initVote() throws IOException {
+        // readers of a dropped snapshot are done by now, release its file before writing the new one
+        closeRetiredCitizenListSnapshot();
+        CitizenListSnapshot.Builder builder = new CitizenListSnapshot.Builder(citizenListSnapshotFile);
+        CitizenListSnapshot snapshot;
+        try {
+            EntityManager entityManager = getEntityManager();
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+            Root<Citizen> rootCitizen = query.from(Citizen.class);
+            Join<Citizen, PollingStation> rootPollingStation = rootCitizen.join("pollingStation");
+
+            query.multiselect(rootPollingStation.get("name"), rootCitizen.get("ssNumber"), rootCitizen.get("publicKeyModulus"));
+            query.orderBy(criteriaBuilder.asc(rootPollingStation.get("id")), criteriaBuilder.asc(rootCitizen.get("id")));
+
+            TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+            typedQuery.setHint(QueryHints.FETCH_SIZE, CITIZEN_FETCH_SIZE);
+            typedQuery.setHint(QueryHints.READ_ONLY, true);
+            Stream<Object[]> stream = typedQuery.getResultStream();
+            try {
+                Iterator<Object[]> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    builder.add((String) row[0], (String) row[1], new BigInteger((String) row[2], 16));
+                }
+            } finally {
+                stream.close();
+            }
+            for (fr.gaellalire.vote.actor.state.service.PollingStation pollingStation : getPollingStationList()) {
+                builder.addEmpty(pollingStation.getName());
+            }
+            snapshot = builder.build();
+        } catch (IOException e) {
+            builder.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            builder.abort();
+            throw e;
+        }
+        replaceCitizenListSnapshot(snapshot);
+        LOGGER.info("Citizen lists of {} polling stations frozen", snapshot.getPollingStationCount());
+    }
+
+    @Override
+    public void close() {
+        replaceCitizenListSnapshot(null);
+        closeRetiredCitizenListSnapshot();
+        super.close();
     }
 
 }
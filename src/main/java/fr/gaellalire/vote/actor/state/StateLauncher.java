@@ -17,18 +17,32 @@
 package fr.gaellalire.vote.actor.state;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.security.Permission;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 
+import javax.persistence.Persistence;
+
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fr.gaellalire.vote.AbstractLauncher;
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.actor.state.service.StateService;
+import fr.gaellalire.vote.transport.WireRMIOverrides;
+import fr.gaellalire.vote.transport.WireServer;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 /**
@@ -54,6 +68,22 @@ public class StateLauncher extends AbstractLauncher implements Callable<Void> {
         new StateLauncher(targetFile, targetFile, targetFile, false).call();
     }
 
+    /**
+     * Add the suffix to the database name, before the parameters of the url (after ; for H2 or ? for most drivers).
+     */
+    public static String getShardUrl(final String url, final String suffix) {
+        int end = url.length();
+        int semicolon = url.indexOf(';');
+        if (semicolon != -1) {
+            end = semicolon;
+        }
+        int questionMark = url.indexOf('?');
+        if (questionMark != -1 && questionMark < end) {
+            end = questionMark;
+        }
+        return url.substring(0, end) + suffix + url.substring(end);
+    }
+
     public StateLauncher(final File config, final File data, final File cache) {
         super(config, data, cache, true);
     }
@@ -66,20 +96,97 @@ public class StateLauncher extends AbstractLauncher implements Callable<Void> {
     public void runService() throws Exception {
         Properties properties = loadProperties("state.properties");
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         RSATrustSystem rsaTrustSystem = new RSATrustSystem(random);
+        SignatureTrustSystem citizenTrustSystem = createCitizenTrustSystem(properties, rsaTrustSystem, random);
 
         Map<String, String> entityManagerProperties = createEntityManagerProperties(properties);
 
-        LOGGER.info("Creating state");
-        StateActor stateActor = StateActor.create(rsaTrustSystem, properties.getProperty("host"), entityManagerProperties);
+        WireServer wireServer = createWireServer(properties);
+        RMIOverrides rmiOverrides = null;
+        String host = properties.getProperty("host");
+        if (wireServer != null) {
+            host = host + ":" + wireServer.getPort();
+            rmiOverrides = createWireRMIOverrides(properties, host, wireServer);
+        }
+
+        int shardCount = Integer.parseInt(properties.getProperty("shard.count", "1"));
+
+        List<StateActor> stateActors = new ArrayList<StateActor>(shardCount);
+        StateService stateService;
+        ShardedStateActor shardedStateActor = null;
+        if (shardCount <= 1) {
+            LOGGER.info("Creating state");
+            StateActor stateActor = StateActor.create(citizenTrustSystem, host, entityManagerProperties, rmiOverrides);
+            stateActors.add(stateActor);
+            stateService = stateActor;
+        } else {
+            LOGGER.info("Creating state with {} shards", shardCount);
+            String urlSuffix = properties.getProperty("shard.urlSuffix", "-shard");
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    // each shard has its own database
+                    Map<String, String> shardEntityManagerProperties = new HashMap<>(entityManagerProperties);
+                    shardEntityManagerProperties.put("hibernate.connection.url", getShardUrl(entityManagerProperties.get("hibernate.connection.url"), urlSuffix + i));
+                    stateActors.add(new StateActor(Persistence.createEntityManagerFactory("statePersistenceUnit", shardEntityManagerProperties), citizenTrustSystem));
+                }
+                shardedStateActor = ShardedStateActor.create(stateActors, host, rmiOverrides);
+            } catch (Exception e) {
+                for (StateActor stateActor : stateActors) {
+                    stateActor.close();
+                }
+                if (wireServer != null) {
+                    wireServer.close();
+                }
+                throw e;
+            }
+            stateService = shardedStateActor;
+        }
         LOGGER.info("State created");
 
         try {
+            String snapshotFileName = properties.getProperty("initVote.snapshotFile");
+            if (snapshotFileName != null) {
+                for (int i = 0; i < stateActors.size(); i++) {
+                    StateActor stateActor = stateActors.get(i);
+                    String shardSnapshotFileName = snapshotFileName;
+                    if (shardedStateActor != null) {
+                        shardSnapshotFileName = snapshotFileName + i;
+                    }
+                    stateActor.setCitizenListSnapshotFile(new File(getData(), shardSnapshotFileName));
+                    // a restarted state serves the frozen citizen lists again
+                    stateActor.loadCitizenListSnapshot();
+                }
+            }
+
+            int enrolmentChunkSize = Integer.parseInt(properties.getProperty("enrolment.chunkSize", String.valueOf(StateActor.DEFAULT_ENROLMENT_CHUNK_SIZE)));
+            for (StateActor stateActor : stateActors) {
+                stateActor.setEnrolmentChunkSize(enrolmentChunkSize);
+            }
+
+            String enrolmentFileName = properties.getProperty("enrolment.file");
+            if (enrolmentFileName != null) {
+                LOGGER.info("Enrolling citizens from {}", enrolmentFileName);
+                Reader reader = new InputStreamReader(new FileInputStream(new File(getData(), enrolmentFileName)), "UTF-8");
+                try {
+                    new CitizenEnrolmentLoader(stateService, enrolmentChunkSize).load(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+
             waitForInterruption();
         } finally {
-            stateActor.close();
+            if (shardedStateActor != null) {
+                shardedStateActor.close();
+            }
+            for (StateActor stateActor : stateActors) {
+                stateActor.close();
+            }
+            if (wireServer != null) {
+                wireServer.close();
+            }
         }
 
     }
@@ -28,6 +28,7 @@ import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 /**
@@ -39,7 +40,8 @@ import javax.persistence.Table;
 public class Citizen {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "citizen_sequence")
+    @SequenceGenerator(name = "citizen_sequence", sequenceName = "citizen_sequence", allocationSize = 50)
     private long id;
 
     @Lob
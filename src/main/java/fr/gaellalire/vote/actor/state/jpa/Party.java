@@ -16,6 +16,7 @@
 
 package fr.gaellalire.vote.actor.state.jpa;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -23,10 +24,16 @@ import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 /**
+ * Never updated once created, kept in the second level cache.
  * @author Gael Lalire
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
 @Table(indexes = {@Index(name = "party_name_index", columnList = "name", unique = true)})
 public class Party {
 
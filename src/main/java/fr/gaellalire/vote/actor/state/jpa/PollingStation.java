@@ -18,6 +18,7 @@ package fr.gaellalire.vote.actor.state.jpa;
 
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CollectionTable;
 import javax.persistence.Column;
 import javax.persistence.ElementCollection;
@@ -30,10 +31,16 @@ import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 /**
+ * Columns are never updated once created so the entity is kept in the second level cache, collections are not cached and must be read from the database.
  * @author Gael Lalire
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
 @Table(indexes = {@Index(name = "polling_station_name_index", columnList = "name", unique = true)})
 public class PollingStation {
 
@@ -67,6 +74,10 @@ public class PollingStation {
         this.publicKeyModulusSha512 = publicKeyModulusSha512;
     }
 
+    public long getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state.service;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * @author Gael Lalire
+ */
+public class CitizenEnrolment implements Serializable {
+
+    private static final long serialVersionUID = -3316617360581871043L;
+
+    private String ssNumber;
+
+    private String pollingStationName;
+
+    private BigInteger publicKeyModulus;
+
+    public CitizenEnrolment(final String ssNumber, final String pollingStationName, final BigInteger publicKeyModulus) {
+        this.ssNumber = ssNumber;
+        this.pollingStationName = pollingStationName;
+        this.publicKeyModulus = publicKeyModulus;
+    }
+
+    public String getSsNumber() {
+        return ssNumber;
+    }
+
+    public String getPollingStationName() {
+        return pollingStationName;
+    }
+
+    public BigInteger getPublicKeyModulus() {
+        return publicKeyModulus;
+    }
+
+    @Override
+    public String toString() {
+        return "CitizenEnrolment [ssNumber=" + ssNumber + ", pollingStationName=" + pollingStationName + ", publicKeyModulus=" + publicKeyModulus + "]";
+    }
+
+}
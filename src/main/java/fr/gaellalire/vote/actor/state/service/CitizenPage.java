@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.actor.state.service;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of {@link StateService#getCitizenPage(long, int)}, the next page is asked with {@link #getNextAfterId()}.
+ * @author Gael Lalire
+ */
+public class CitizenPage implements Serializable {
+
+    private static final long serialVersionUID = 2847015533081652419L;
+
+    private List<Citizen> citizens;
+
+    private long nextAfterId;
+
+    private boolean last;
+
+    public CitizenPage(final List<Citizen> citizens, final long nextAfterId, final boolean last) {
+        this.citizens = citizens;
+        this.nextAfterId = nextAfterId;
+        this.last = last;
+    }
+
+    public List<Citizen> getCitizens() {
+        return citizens;
+    }
+
+    public long getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    @Override
+    public String toString() {
+        return "CitizenPage [size=" + citizens.size() + ", nextAfterId=" + nextAfterId + ", last=" + last + "]";
+    }
+
+}
@@ -37,8 +37,19 @@ public interface StateService extends Remote {
 
     List<Citizen> getPollingStationCitizenList(String pollingStationName) throws RemoteException;
 
+    /**
+     * @return the SHA-512 of the citizen list frozen when the vote was initiated, null before
+     */
+    byte[] getPollingStationCitizenListDigest(String pollingStationName) throws RemoteException;
+
     List<Citizen> getCitizenList() throws RemoteException;
 
+    /**
+     * Citizens with their approvals, ordered by id. The first page is asked with afterId 0.
+     * @param limit maximum number of citizens of the page, the state may return less
+     */
+    CitizenPage getCitizenPage(long afterId, int limit) throws RemoteException;
+
     List<PollingStation> getPollingStationList() throws RemoteException;
 
     Citizen getCitizen(String ssNumber) throws RemoteException;
@@ -55,6 +66,11 @@ public interface StateService extends Remote {
 
     void addCitizen(String ssNumber, String pollingStationName, BigInteger publicKeyModulus) throws RemoteException;
 
+    /**
+     * Bulk version of {@link #addCitizen(String, String, BigInteger)}, citizens are committed by chunk.
+     */
+    void addCitizens(List<CitizenEnrolment> citizenEnrolments) throws RemoteException;
+
     boolean verifyCitizen(String ssNumber, byte[] biometricData) throws RemoteException;
 
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Client side of the {@link WireServer}, a dynamic proxy of the service interface. Connections are kept open and reused, one call at a time
+ * per connection. The server closes idle connections, so a call on a pooled connection which was closed is sent again once on a new
+ * connection.
+ * @author Gael Lalire
+ */
+public final class WireClient implements InvocationHandler {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * Longer than the long polling calls (awaitState).
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 120000;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static final class Connection {
+
+        private Socket socket;
+
+        private DataInputStream in;
+
+        private DataOutputStream out;
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * @return null if the server closed the connection before answering
+         */
+        byte[] call(final byte[] request) throws IOException {
+            WireCodec.writeFrame(out, request);
+            return WireCodec.readFrame(in);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+    }
+
+    private InetSocketAddress address;
+
+    private String name;
+
+    private int connectTimeoutMillis;
+
+    private int readTimeoutMillis;
+
+    private Map<Method, Integer> indexByMethod = new HashMap<Method, Integer>();
+
+    private ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<Connection>();
+
+    private WireClient(final InetSocketAddress address, final String name, final Class<?> serviceInterface, final int connectTimeoutMillis,
+            final int readTimeoutMillis) {
+        this.address = address;
+        this.name = name;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        Method[] methods = WireCodec.getMethods(serviceInterface);
+        for (int i = 0; i < methods.length; i++) {
+            indexByMethod.put(methods[i], i);
+        }
+    }
+
+    /**
+     * @param hostAndPort address of the {@link WireServer}, like host:port
+     */
+    public static <T> T lookup(final Class<T> serviceInterface, final String hostAndPort, final String name) {
+        return lookup(serviceInterface, hostAndPort, name, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param hostAndPort address of the {@link WireServer}, like host:port
+     * @param readTimeoutMillis time a call may wait for its answer, 0 to wait forever
+     */
+    public static <T> T lookup(final Class<T> serviceInterface, final String hostAndPort, final String name, final int connectTimeoutMillis,
+            final int readTimeoutMillis) {
+        int separator = hostAndPort.lastIndexOf(':');
+        if (separator == -1) {
+            throw new IllegalArgumentException("Port missing in " + hostAndPort);
+        }
+        InetSocketAddress address = InetSocketAddress.createUnresolved(hostAndPort.substring(0, separator), Integer.parseInt(hostAndPort.substring(separator + 1)));
+        WireClient wireClient = new WireClient(address, name, serviceInterface, connectTimeoutMillis, readTimeoutMillis);
+        return serviceInterface.cast(Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[] {serviceInterface}, wireClient));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            return "WireClient[" + address + "/" + name + "]";
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        WireCodec.write(out, name);
+        out.writeShort(indexByMethod.get(method));
+        if (args == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(args.length);
+            for (Object arg : args) {
+                WireCodec.write(out, arg);
+            }
+        }
+        out.flush();
+
+        byte[] request = byteArrayOutputStream.toByteArray();
+        byte[] response = null;
+        Connection connection = idleConnections.poll();
+        if (connection != null) {
+            try {
+                response = connection.call(request);
+            } catch (SocketTimeoutException e) {
+                // the call may have been executed, do not send it again
+                connection.close();
+                throw new RemoteException("Wire call " + method.getName() + " to " + address + " timed out", e);
+            } catch (IOException e) {
+                // closed by the server while idle
+                response = null;
+            }
+            if (response == null) {
+                connection.close();
+                connection = null;
+            }
+        }
+        if (connection == null) {
+            try {
+                connection = connect();
+                response = connection.call(request);
+                if (response == null) {
+                    throw new IOException("Connection closed by server");
+                }
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close();
+                }
+                throw new RemoteException("Wire call " + method.getName() + " to " + address + " failed", e);
+            }
+        }
+        idleConnections.add(connection);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response));
+        byte status = in.readByte();
+        Object result = WireCodec.read(in);
+        if (status == WireServer.STATUS_OK) {
+            return result;
+        }
+        Throwable throwable = (Throwable) result;
+        if (throwable instanceof RuntimeException || throwable instanceof Error) {
+            throw throwable;
+        }
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            if (exceptionType.isInstance(throwable)) {
+                throw throwable;
+            }
+        }
+        throw new RemoteException("Wire call " + method.getName() + " failed", throwable);
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.transport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.gaellalire.vote.Ballot;
+import fr.gaellalire.vote.Judgment;
+import fr.gaellalire.vote.actor.party.service.PartyResult;
+import fr.gaellalire.vote.actor.polling_station.service.PollingStationState;
+import fr.gaellalire.vote.actor.polling_station.service.VotingListSnapshot;
+import fr.gaellalire.vote.actor.polling_station.service.VotingMetadata;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.service.Approval;
+import fr.gaellalire.vote.actor.state.service.Citizen;
+import fr.gaellalire.vote.actor.state.service.CitizenApprovalType;
+import fr.gaellalire.vote.actor.state.service.CitizenEnrolment;
+import fr.gaellalire.vote.actor.state.service.CitizenPage;
+import fr.gaellalire.vote.actor.state.service.Party;
+import fr.gaellalire.vote.actor.state.service.PollingStation;
+
+/**
+ * Binary encoding of service calls : each value is a one byte type tag followed by its content, variable length content is prefixed by its
+ * length. Only the types of the service signatures are known, nothing is deserialized with java serialization : lengths and counts are checked
+ * against the bytes left in the frame before anything is allocated. Exceptions are sent as their class name and message. Messages are sent as
+ * frames prefixed by their length.
+ * @author Gael Lalire
+ */
+public final class WireCodec {
+
+    public static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+    private static final byte NULL = 0;
+
+    private static final byte TRUE = 1;
+
+    private static final byte FALSE = 2;
+
+    private static final byte INT = 3;
+
+    private static final byte LONG = 4;
+
+    private static final byte STRING = 5;
+
+    private static final byte BYTES = 6;
+
+    private static final byte BIG_INTEGER = 7;
+
+    private static final byte LIST = 8;
+
+    private static final byte POLLING_STATION_STATE = 9;
+
+    private static final byte CITIZEN_APPROVAL_TYPE = 10;
+
+    private static final byte BALLOT = 11;
+
+    private static final byte VOTING_MODULUS_LIST = 12;
+
+    private static final byte VOTING_SIGNATURE_LIST = 13;
+
+    private static final byte VOTING_METADATA = 14;
+
+    private static final byte PARTY = 15;
+
+    private static final byte POLLING_STATION = 16;
+
+    private static final byte CITIZEN = 17;
+
+    private static final byte APPROVAL = 18;
+
+    private static final byte CITIZEN_ENROLMENT = 19;
+
+    private static final byte VOTING_LIST_SNAPSHOT = 20;
+
+    private static final byte CITIZEN_PAGE = 21;
+
+    private static final byte PARTY_RESULT = 22;
+
+    private static final byte EXCEPTION = 23;
+
+    private static final Map<Class<?>, Method[]> METHODS_BY_INTERFACE = new ConcurrentHashMap<Class<?>, Method[]>();
+
+    private WireCodec() {
+    }
+
+    /**
+     * Methods of a service interface in an order known by both sides, a call is sent with the index of its method.
+     */
+    public static Method[] getMethods(final Class<?> serviceInterface) {
+        Method[] methods = METHODS_BY_INTERFACE.get(serviceInterface);
+        if (methods == null) {
+            methods = serviceInterface.getMethods();
+            Arrays.sort(methods, new Comparator<Method>() {
+
+                @Override
+                public int compare(final Method o1, final Method o2) {
+                    return (o1.getName() + Arrays.toString(o1.getParameterTypes())).compareTo(o2.getName() + Arrays.toString(o2.getParameterTypes()));
+                }
+            });
+            METHODS_BY_INTERFACE.put(serviceInterface, methods);
+        }
+        return methods;
+    }
+
+    public static void write(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            if (((Boolean) value).booleanValue()) {
+                out.writeByte(TRUE);
+            } else {
+                out.writeByte(FALSE);
+            }
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                write(out, element);
+            }
+        } else if (value instanceof PollingStationState) {
+            out.writeByte(POLLING_STATION_STATE);
+            out.writeByte(((PollingStationState) value).ordinal());
+        } else if (value instanceof CitizenApprovalType) {
+            out.writeByte(CITIZEN_APPROVAL_TYPE);
+            out.writeByte(((CitizenApprovalType) value).ordinal());
+        } else if (value instanceof Ballot) {
+            out.writeByte(BALLOT);
+            Judgment[] judgments = ((Ballot) value).getJudgments();
+            out.writeInt(judgments.length);
+            for (Judgment judgment : judgments) {
+                out.writeByte(judgment.ordinal());
+            }
+        } else if (value instanceof VotingModulusList) {
+            out.writeByte(VOTING_MODULUS_LIST);
+            ((VotingModulusList) value).writeTo(out);
+        } else if (value instanceof VotingSignatureList) {
+            Map<String, byte[]> signatureBySSNumber = ((VotingSignatureList) value).getSignatureBySSNumber();
+            out.writeByte(VOTING_SIGNATURE_LIST);
+            out.writeInt(signatureBySSNumber.size());
+            for (Entry<String, byte[]> entry : signatureBySSNumber.entrySet()) {
+                writeString(out, entry.getKey());
+                writeBytes(out, entry.getValue());
+            }
+        } else if (value instanceof VotingListSnapshot) {
+            VotingListSnapshot votingListSnapshot = (VotingListSnapshot) value;
+            out.writeByte(VOTING_LIST_SNAPSHOT);
+            writeBytes(out, votingListSnapshot.getDigest());
+            writeBytes(out, votingListSnapshot.getData());
+        } else if (value instanceof VotingMetadata) {
+            out.writeByte(VOTING_METADATA);
+            write(out, ((VotingMetadata) value).getPollingStationPublicKeyModulus());
+        } else if (value instanceof Party) {
+            Party party = (Party) value;
+            out.writeByte(PARTY);
+            write(out, party.getName());
+            write(out, party.getHost());
+            write(out, party.getRmiName());
+        } else if (value instanceof PollingStation) {
+            PollingStation pollingStation = (PollingStation) value;
+            out.writeByte(POLLING_STATION);
+            write(out, pollingStation.getName());
+            write(out, pollingStation.getHost());
+            write(out, pollingStation.getRmiName());
+            write(out, pollingStation.getPublicKeyModulusSha512());
+            write(out, pollingStation.getSsNumbers());
+        } else if (value instanceof Citizen) {
+            Citizen citizen = (Citizen) value;
+            out.writeByte(CITIZEN);
+            write(out, citizen.getSsNumber());
+            write(out, citizen.getPollingStationName());
+            write(out, citizen.getPublicKeyModulus());
+            write(out, citizen.getApprovedBy());
+            write(out, citizen.getApprobatorOf());
+        } else if (value instanceof Approval) {
+            Approval approval = (Approval) value;
+            out.writeByte(APPROVAL);
+            write(out, approval.getSignature());
+            write(out, approval.getSsNumber());
+            write(out, approval.getCitizenApprovalType());
+        } else if (value instanceof CitizenEnrolment) {
+            CitizenEnrolment citizenEnrolment = (CitizenEnrolment) value;
+            out.writeByte(CITIZEN_ENROLMENT);
+            write(out, citizenEnrolment.getSsNumber());
+            write(out, citizenEnrolment.getPollingStationName());
+            write(out, citizenEnrolment.getPublicKeyModulus());
+        } else if (value instanceof CitizenPage) {
+            CitizenPage citizenPage = (CitizenPage) value;
+            out.writeByte(CITIZEN_PAGE);
+            write(out, citizenPage.getCitizens());
+            out.writeLong(citizenPage.getNextAfterId());
+            out.writeBoolean(citizenPage.isLast());
+        } else if (value instanceof PartyResult) {
+            PartyResult partyResult = (PartyResult) value;
+            out.writeByte(PARTY_RESULT);
+            out.writeInt(partyResult.getPartyNumber());
+            out.writeByte(partyResult.getJudgment().ordinal());
+            out.writeBoolean(partyResult.isPlus());
+            out.writeDouble(partyResult.getPercentPlus());
+            out.writeDouble(partyResult.getPercentMinus());
+        } else if (value instanceof Throwable) {
+            Throwable throwable = (Throwable) value;
+            out.writeByte(EXCEPTION);
+            writeString(out, throwable.getClass().getName());
+            write(out, throwable.getMessage());
+        } else {
+            throw new IOException("Unable to encode " + value.getClass());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Object read(final DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case INT:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case STRING:
+            return readString(in);
+        case BYTES:
+            return readBytes(in);
+        case BIG_INTEGER:
+            return new BigInteger(readBytes(in));
+        case LIST:
+            int size = readCount(in);
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(read(in));
+            }
+            return list;
+        case POLLING_STATION_STATE:
+            return readEnum(in, PollingStationState.values());
+        case CITIZEN_APPROVAL_TYPE:
+            return readEnum(in, CitizenApprovalType.values());
+        case BALLOT:
+            Judgment[] judgments = new Judgment[readCount(in)];
+            Judgment[] values = Judgment.values();
+            for (int i = 0; i < judgments.length; i++) {
+                judgments[i] = readEnum(in, values);
+            }
+            return new Ballot(judgments);
+        case VOTING_MODULUS_LIST:
+            return VotingModulusList.readFrom(in);
+        case VOTING_SIGNATURE_LIST:
+            VotingSignatureList votingSignatureList = new VotingSignatureList();
+            int signatureCount = readCount(in);
+            Map<String, byte[]> signatureBySSNumber = votingSignatureList.getSignatureBySSNumber();
+            for (int i = 0; i < signatureCount; i++) {
+                signatureBySSNumber.put(readString(in), readBytes(in));
+            }
+            return votingSignatureList;
+        case VOTING_LIST_SNAPSHOT:
+            return new VotingListSnapshot(readBytes(in), readBytes(in));
+        case VOTING_METADATA:
+            return new VotingMetadata((BigInteger) read(in));
+        case PARTY:
+            return new Party((String) read(in), (String) read(in), (String) read(in));
+        case POLLING_STATION:
+            return new PollingStation((String) read(in), (String) read(in), (String) read(in), (byte[]) read(in), (List<String>) read(in));
+        case CITIZEN:
+            return new Citizen((String) read(in), (String) read(in), (BigInteger) read(in), (List<Approval>) read(in), (List<Approval>) read(in));
+        case APPROVAL:
+            return new Approval((byte[]) read(in), (String) read(in), (CitizenApprovalType) read(in));
+        case CITIZEN_ENROLMENT:
+            return new CitizenEnrolment((String) read(in), (String) read(in), (BigInteger) read(in));
+        case CITIZEN_PAGE:
+            return new CitizenPage((List<Citizen>) read(in), in.readLong(), in.readBoolean());
+        case PARTY_RESULT:
+            return new PartyResult(in.readInt(), readEnum(in, Judgment.values()), in.readBoolean(), in.readDouble(), in.readDouble());
+        case EXCEPTION:
+            return toException(readString(in), (String) read(in));
+        default:
+            throw new IOException("Unknown type tag " + tag);
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        // the stream reads a frame already in memory, available is what is left of it
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * Each element takes at least one byte.
+     */
+    private static int readCount(final DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static <E extends Enum<E>> E readEnum(final DataInputStream in, final E[] values) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Invalid ordinal " + ordinal + " for " + values[0].getDeclaringClass().getSimpleName());
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Only exceptions a caller may catch are rebuilt, others become a {@link RemoteException} with the remote class name.
+     */
+    private static Exception toException(final String className, final String message) {
+        if (RemoteException.class.getName().equals(className)) {
+            return new RemoteException(message);
+        } else if (IllegalArgumentException.class.getName().equals(className)) {
+            return new IllegalArgumentException(message);
+        } else if (IllegalStateException.class.getName().equals(className)) {
+            return new IllegalStateException(message);
+        } else if (UnsupportedOperationException.class.getName().equals(className)) {
+            return new UnsupportedOperationException(message);
+        }
+        return new RemoteException(className + ": " + message);
+    }
+
+    public static void writeFrame(final DataOutputStream out, final byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * @return null if the stream was closed before the frame
+     */
+    public static byte[] readFrame(final DataInputStream in) throws IOException {
+        int firstByte = in.read();
+        if (firstByte == -1) {
+            return null;
+        }
+        int length = firstByte << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+}
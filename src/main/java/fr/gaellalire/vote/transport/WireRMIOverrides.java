@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.transport;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.gaellalire.vote.actor.citizen.RMIOverrides;
+import fr.gaellalire.vote.actor.party.service.PartyService;
+import fr.gaellalire.vote.actor.polling_station.service.PollingStationService;
+import fr.gaellalire.vote.actor.state.service.Party;
+import fr.gaellalire.vote.actor.state.service.PollingStation;
+import fr.gaellalire.vote.actor.state.service.StateService;
+
+/**
+ * Use the wire transport instead of RMI. Hosts registered in the state are wire server addresses (host:port).
+ * @author Gael Lalire
+ */
+public class WireRMIOverrides implements RMIOverrides {
+
+    private StateService stateService;
+
+    private WireServer wireServer;
+
+    private int connectTimeoutMillis;
+
+    private int readTimeoutMillis;
+
+    private Map<String, PartyService> partyServiceByName = new ConcurrentHashMap<String, PartyService>();
+
+    private Map<String, PollingStationService> pollingStationServiceByName = new ConcurrentHashMap<String, PollingStationService>();
+
+    /**
+     * @param wireServer where actors are bound, null for a citizen which only calls other actors
+     */
+    public WireRMIOverrides(final String stateHostAndPort, final WireServer wireServer) {
+        this(stateHostAndPort, wireServer, WireClient.DEFAULT_CONNECT_TIMEOUT, WireClient.DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param wireServer where actors are bound, null for a citizen which only calls other actors
+     * @param readTimeoutMillis time a call may wait for its answer, must be longer than the long polling calls
+     */
+    public WireRMIOverrides(final String stateHostAndPort, final WireServer wireServer, final int connectTimeoutMillis, final int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        stateService = WireClient.lookup(StateService.class, stateHostAndPort, "State", connectTimeoutMillis, readTimeoutMillis);
+        this.wireServer = wireServer;
+    }
+
+    @Override
+    public StateService getStateService() {
+        return stateService;
+    }
+
+    @Override
+    public PollingStationService getPollingStationService(final String pollingStationName) {
+        PollingStationService pollingStationService = pollingStationServiceByName.get(pollingStationName);
+        if (pollingStationService == null) {
+            PollingStation pollingStation;
+            try {
+                pollingStation = stateService.getPollingStation(pollingStationName);
+            } catch (RemoteException e) {
+                throw new IllegalStateException("Unable to find polling station " + pollingStationName, e);
+            }
+            pollingStationService = WireClient.lookup(PollingStationService.class, pollingStation.getHost(), pollingStation.getRmiName(), connectTimeoutMillis,
+                    readTimeoutMillis);
+            pollingStationServiceByName.put(pollingStationName, pollingStationService);
+        }
+        return pollingStationService;
+    }
+
+    @Override
+    public PartyService getPartyService(final String partyName) {
+        PartyService partyService = partyServiceByName.get(partyName);
+        if (partyService == null) {
+            try {
+                for (Party party : stateService.getPartyList()) {
+                    if (party.getName().equals(partyName)) {
+                        partyService = WireClient.lookup(PartyService.class, party.getHost(), party.getRmiName(), connectTimeoutMillis, readTimeoutMillis);
+                        partyServiceByName.put(partyName, partyService);
+                        break;
+                    }
+                }
+            } catch (RemoteException e) {
+                throw new IllegalStateException("Unable to find party " + partyName, e);
+            }
+        }
+        return partyService;
+    }
+
+    @Override
+    public boolean bind(final String name, final Remote remote) {
+        if (wireServer == null) {
+            throw new IllegalStateException("No wire server to bind " + name);
+        }
+        wireServer.bind(name, remote);
+        return true;
+    }
+
+}
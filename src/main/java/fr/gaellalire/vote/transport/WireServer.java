@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serve the actors bound to it with the {@link WireCodec} protocol. Like RMI, each connection is served by its own thread and calls of a
+ * connection are sequential. A connection without any call for idleTimeout ms is closed so that idle pooled connections of clients do not keep
+ * their thread. Connections beyond maxConnections are answered with an exception and closed.
+ * @author Gael Lalire
+ */
+public class WireServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WireServer.class);
+
+    public static final byte STATUS_OK = 0;
+
+    public static final byte STATUS_EXCEPTION = 1;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static class BoundObject {
+
+        private Object target;
+
+        private Method[] methods;
+
+        BoundObject(final Object target, final Method[] methods) {
+            this.target = target;
+            this.methods = methods;
+        }
+
+    }
+
+    private ServerSocket serverSocket;
+
+    private int port;
+
+    private Map<String, BoundObject> boundObjectByName = new ConcurrentHashMap<String, BoundObject>();
+
+    private ExecutorService executorService;
+
+    private Thread acceptThread;
+
+    private int idleTimeoutMillis;
+
+    private volatile boolean closed;
+
+    /**
+     * @param port 0 for any free port
+     * @param idleTimeoutMillis time a connection may wait for its next call (and for the rest of a call), 0 to wait forever
+     */
+    public WireServer(final int port, final int maxConnections, final int idleTimeoutMillis) throws IOException {
+        serverSocket = new ServerSocket(port);
+        this.port = serverSocket.getLocalPort();
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        // no queue : a connection waiting for a thread would wait for another connection to be closed
+        executorService = new ThreadPoolExecutor(0, maxConnections, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "wire-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        acceptThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "wire-accept-" + this.port);
+        acceptThread.setDaemon(true);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void start() {
+        acceptThread.start();
+    }
+
+    /**
+     * @param remote an actor, its calls are the methods of its {@link Remote} interfaces
+     */
+    public void bind(final String name, final Remote remote) {
+        Class<?> serviceInterface = getServiceInterface(remote.getClass());
+        if (serviceInterface == null) {
+            throw new IllegalArgumentException(remote.getClass() + " does not implement a remote interface");
+        }
+        boundObjectByName.put(name, new BoundObject(remote, WireCodec.getMethods(serviceInterface)));
+    }
+
+    public void unbind(final String name) {
+        boundObjectByName.remove(name);
+    }
+
+    public static Class<?> getServiceInterface(final Class<?> remoteClass) {
+        Class<?> currentClass = remoteClass;
+        while (currentClass != null) {
+            for (Class<?> interfaceClass : currentClass.getInterfaces()) {
+                if (interfaceClass != Remote.class && Remote.class.isAssignableFrom(interfaceClass)) {
+                    return interfaceClass;
+                }
+            }
+            currentClass = currentClass.getSuperclass();
+        }
+        return null;
+    }
+
+    private void accept() {
+        try {
+            while (!closed) {
+                Socket socket = serverSocket.accept();
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(idleTimeoutMillis);
+                    executorService.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warn("Too many wire connections, connection from {} refused", socket.getRemoteSocketAddress());
+                    refuse(socket);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to configure wire connection", e);
+                    socket.close();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOGGER.error("Wire server stopped accepting connections", e);
+            }
+        }
+    }
+
+    /**
+     * Answer the first call with an exception, so the client fails with a clear message instead of a closed connection.
+     */
+    private static void refuse(final Socket socket) {
+        try {
+            try {
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+                out.writeByte(STATUS_EXCEPTION);
+                WireCodec.write(out, new RemoteException("Too many wire connections"));
+                out.flush();
+                WireCodec.writeFrame(new DataOutputStream(socket.getOutputStream()), byteArrayOutputStream.toByteArray());
+                socket.shutdownOutput();
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Unable to refuse wire connection", e);
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                byte[] frame = WireCodec.readFrame(in);
+                while (frame != null) {
+                    WireCodec.writeFrame(out, call(frame));
+                    frame = WireCodec.readFrame(in);
+                }
+            } finally {
+                socket.close();
+            }
+        } catch (SocketTimeoutException e) {
+            LOGGER.debug("Idle wire connection closed");
+        } catch (IOException e) {
+            LOGGER.debug("Wire connection closed", e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Wire connection failed", e);
+        } catch (Error e) {
+            LOGGER.error("Wire connection failed", e);
+            throw e;
+        }
+    }
+
+    private byte[] call(final byte[] frame) throws IOException {
+        Object result;
+        byte status;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+            String name = (String) WireCodec.read(in);
+            int methodIndex = in.readUnsignedShort();
+            Object[] args = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = WireCodec.read(in);
+            }
+            BoundObject boundObject = boundObjectByName.get(name);
+            if (boundObject == null) {
+                throw new RemoteException("Not bound " + name);
+            }
+            result = boundObject.methods[methodIndex].invoke(boundObject.target, args);
+            status = STATUS_OK;
+        } catch (InvocationTargetException e) {
+            result = e.getCause();
+            status = STATUS_EXCEPTION;
+        } catch (Exception e) {
+            result = e;
+            status = STATUS_EXCEPTION;
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        out.writeByte(status);
+        try {
+            WireCodec.write(out, result);
+        } catch (IOException e) {
+            // result of a type unknown to the codec (an entity for instance)
+            byteArrayOutputStream.reset();
+            out.writeByte(STATUS_EXCEPTION);
+            WireCodec.write(out, new RemoteException(String.valueOf(result)));
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to encode wire result", e);
+            byteArrayOutputStream.reset();
+            out.writeByte(STATUS_EXCEPTION);
+            WireCodec.write(out, new RemoteException("Unable to encode result: " + e));
+        }
+        out.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close wire server", e);
+        }
+        executorService.shutdownNow();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.rsa.RSAPublicPart;
+
+/**
+ * Hybrid encryption in a single message : a fresh AES-256 key is RSA-OAEP wrapped for the recipient and the data is AES-GCM encrypted with it.
+ * The header (version and wrapped key) is authenticated with the data, so a tampered envelope is rejected as a whole.
+ * <pre>
+ * version (1 byte) | wrapped key length (2 bytes) | wrapped key | nonce (12 bytes) | ciphertext | tag (16 bytes)
+ * </pre>
+ * @author Gael Lalire
+ */
+public final class HybridEnvelope {
+
+    public static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final byte VERSION = 1;
+
+    private static final int KEY_SIZE = 32;
+
+    private static final int NONCE_SIZE = 12;
+
+    private static final int TAG_SIZE = 16;
+
+    /**
+     * GCM cipher is not thread safe but can be initialized again with another key and nonce.
+     */
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> createCipher());
+
+    private SecureRandom random;
+
+    public HybridEnvelope(final SecureRandom random) {
+        this.random = random;
+    }
+
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(CIPHER_TRANSFORMATION, BouncyCastleProvider.PROVIDER_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create " + CIPHER_TRANSFORMATION + " cipher", e);
+        }
+    }
+
+    public byte[] seal(final RSAPublicPart recipient, final byte[] data) throws TrustException {
+        byte[] key = new byte[KEY_SIZE];
+        random.nextBytes(key);
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        byte[] wrappedKey = recipient.encrypt(key);
+        int headerLength = 3 + wrappedKey.length;
+        ByteBuffer envelope = ByteBuffer.allocate(headerLength + NONCE_SIZE + data.length + TAG_SIZE);
+        envelope.put(VERSION);
+        envelope.putShort((short) wrappedKey.length);
+        envelope.put(wrappedKey);
+        envelope.put(nonce);
+        try {
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(envelope.array(), 0, headerLength);
+            cipher.doFinal(data, 0, data.length, envelope.array(), headerLength + NONCE_SIZE);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+        return envelope.array();
+    }
+
+    /**
+     * @throws TrustException if the envelope was not sealed for this recipient or was modified
+     */
+    public static byte[] open(final RSAPrivatePart recipient, final byte[] envelope) throws TrustException {
+        if (envelope.length < 3 || envelope[0] != VERSION) {
+            throw new TrustException("Unsupported envelope");
+        }
+        int wrappedKeyLength = ((envelope[1] & 0xFF) << 8) | (envelope[2] & 0xFF);
+        int headerLength = 3 + wrappedKeyLength;
+        int dataOffset = headerLength + NONCE_SIZE;
+        if (envelope.length < dataOffset + TAG_SIZE) {
+            throw new TrustException("Truncated envelope");
+        }
+        byte[] wrappedKey = new byte[wrappedKeyLength];
+        System.arraycopy(envelope, 3, wrappedKey, 0, wrappedKeyLength);
+        byte[] key = recipient.decrypt(wrappedKey);
+        if (key.length != KEY_SIZE) {
+            throw new TrustException("Invalid envelope key");
+        }
+        try {
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_SIZE * 8, envelope, headerLength, NONCE_SIZE));
+            cipher.updateAAD(envelope, 0, headerLength);
+            return cipher.doFinal(envelope, dataOffset, envelope.length - dataOffset);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+}
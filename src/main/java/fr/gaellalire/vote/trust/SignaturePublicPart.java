@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.gaellalire.vote.trust;
+
+import java.math.BigInteger;
+
+import fr.gaellalire.vestige.spi.trust.PublicPart;
+import fr.gaellalire.vestige.spi.trust.TrustException;
+
+/**
+ * @author Gael Lalire
+ */
+public interface SignaturePublicPart extends PublicPart {
+
+    /**
+     * @return the value given to {@link SignatureTrustSystem#publicPartByKey(BigInteger)} to get this public part
+     */
+    BigInteger getKey();
+
+    boolean verify(byte[] data, byte[] signature) throws TrustException;
+
+    /**
+     * Same result as {@link #verify(byte[], byte[])} when the data SHA-512 hash is already known.
+     */
+    boolean verifyDigest(byte[] sha512, byte[] signature) throws TrustException;
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.gaellalire.vote.trust;
+
+import java.math.BigInteger;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vestige.spi.trust.TrustSystem;
+
+/**
+ * Trust system of the keys which only sign (citizen and voting keys). A public key is identified by a {@link BigInteger} so lists, messages and
+ * columns do not depend on the algorithm.
+ * @author Gael Lalire
+ */
+public interface SignatureTrustSystem extends TrustSystem {
+
+    SignaturePrivatePart generatePrivatePart() throws TrustException;
+
+    SignaturePublicPart publicPartByKey(BigInteger publicKey) throws TrustException;
+
+}
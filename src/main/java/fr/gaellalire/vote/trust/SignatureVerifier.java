@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
+
+/**
+ * Verify many signatures of the same data. The data is hashed once, then the public key steps run in parallel and stop at the first invalid
+ * signature.
+ * @author Gael Lalire
+ */
+public class SignatureVerifier {
+
+    private SignatureTrustSystem signatureTrustSystem;
+
+    private ForkJoinPool forkJoinPool;
+
+    public SignatureVerifier(final SignatureTrustSystem signatureTrustSystem) {
+        this(signatureTrustSystem, ForkJoinPool.commonPool());
+    }
+
+    public SignatureVerifier(final SignatureTrustSystem signatureTrustSystem, final ForkJoinPool forkJoinPool) {
+        this.signatureTrustSystem = signatureTrustSystem;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * @param publicKeys public key of signature at same index
+     */
+    public boolean verifyAll(final byte[] data, final List<BigInteger> publicKeys, final List<byte[]> signatures) throws TrustException {
+        return verifyAllDigest(RSATrustSystem.sha512(data), publicKeys, signatures);
+    }
+
+    public boolean verifyAllDigest(final byte[] sha512, final List<BigInteger> publicKeys, final List<byte[]> signatures) throws TrustException {
+        final int size = publicKeys.size();
+        if (size != signatures.size()) {
+            return false;
+        }
+        try {
+            return forkJoinPool.submit(() -> IntStream.range(0, size).parallel().allMatch(i -> verify(sha512, publicKeys.get(i), signatures.get(i)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrustException(e);
+        } catch (ExecutionException e) {
+            throw new TrustException(e.getCause());
+        }
+    }
+
+    private boolean verify(final byte[] sha512, final BigInteger publicKey, final byte[] signature) {
+        try {
+            return signatureTrustSystem.publicPartByKey(publicKey).verifyDigest(sha512, signature);
+        } catch (TrustException e) {
+            return false;
+        }
+    }
+
+}
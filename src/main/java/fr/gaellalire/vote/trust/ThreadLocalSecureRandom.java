@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * A SecureRandom backed by one SP 800-90A Hash DRBG (SHA-512) per thread. Each DRBG is seeded from the shared seed source when its thread first
+ * uses it, then reseeds itself, so threads generating keys, AES keys or IVs at the same time neither wait for each other nor for the entropy
+ * source.
+ * @author Gael Lalire
+ */
+public class ThreadLocalSecureRandom extends SecureRandom {
+
+    private static final long serialVersionUID = 3026389563251869581L;
+
+    private static final int NONCE_SIZE = 32;
+
+    private transient SecureRandom seedSource;
+
+    private transient ThreadLocal<SecureRandom> drbgByThread = new ThreadLocal<SecureRandom>() {
+
+        @Override
+        protected SecureRandom initialValue() {
+            return createDrbg();
+        }
+    };
+
+    public ThreadLocalSecureRandom(final SecureRandom seedSource) {
+        this.seedSource = seedSource;
+    }
+
+    /**
+     * Seeded from the BouncyCastle DEFAULT SecureRandom, the provider must be registered.
+     */
+    public static ThreadLocalSecureRandom create() throws GeneralSecurityException {
+        return new ThreadLocalSecureRandom(SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME));
+    }
+
+    private SecureRandom createDrbg() {
+        Thread thread = Thread.currentThread();
+        // personalization makes DRBG of different threads differ even if the seed source returns the same bytes
+        byte[] personalizationString = ByteBuffer.allocate(16).putLong(thread.getId()).putLong(System.nanoTime()).array();
+        byte[] nonce = new byte[NONCE_SIZE];
+        seedSource.nextBytes(nonce);
+        return new SP800SecureRandomBuilder(seedSource, false).setPersonalizationString(personalizationString).buildHash(new SHA512Digest(), nonce, false);
+    }
+
+    @Override
+    public void nextBytes(final byte[] bytes) {
+        drbgByThread.get().nextBytes(bytes);
+    }
+
+    /**
+     * Still reads the seed source, use {@link #nextBytes(byte[])} for anything which is not a seed.
+     */
+    @Override
+    public byte[] generateSeed(final int numBytes) {
+        return seedSource.generateSeed(numBytes);
+    }
+
+    /**
+     * Only mixed into the DRBG of the calling thread.
+     */
+    @Override
+    public void setSeed(final byte[] seed) {
+        // called by SecureRandom constructor before the fields are set
+        if (drbgByThread != null) {
+            drbgByThread.get().setSeed(seed);
+        }
+    }
+
+    @Override
+    public void setSeed(final long seed) {
+        if (drbgByThread != null) {
+            drbgByThread.get().setSeed(seed);
+        }
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "ThreadLocalHashDRBG";
+    }
+
+}
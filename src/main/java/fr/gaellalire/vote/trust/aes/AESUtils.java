@@ -27,31 +27,55 @@ import java.util.Arrays;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
 import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
 
 public class AESUtils {
 
+    private static final int PBKDF2_ITERATIONS = 65536;
+
+    private static final int IV_SIZE = 16;
+
     private SecureRandom random;
 
     public AESUtils(final SecureRandom random) {
         this.random = random;
     }
 
+    public SecureRandom getRandom() {
+        return random;
+    }
+
     public SecretKey generateKey() throws Exception {
         KeyGenerator keyGenerator = KeyGenerator.getInstance("AES", BouncyCastleProvider.PROVIDER_NAME);
         keyGenerator.init(256, random);
         return keyGenerator.generateKey();
     }
 
+    /**
+     * Derive an AES key from a password (PBKDF2 with HMAC SHA-256).
+     */
+    public SecretKey deriveKey(final char[] password, final byte[] salt) throws Exception {
+        SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256", BouncyCastleProvider.PROVIDER_NAME);
+        byte[] encoded = secretKeyFactory.generateSecret(new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, 256)).getEncoded();
+        return new SecretKeySpec(encoded, "AES");
+    }
+
     public byte[] encrypt(final SecretKey secretKey, final InputStream is, final OutputStream os) throws Exception {
         try {
             Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding", BouncyCastleProvider.PROVIDER_NAME);
-            IvParameterSpec ivParameterClient = new IvParameterSpec(random.generateSeed(16));
+            // an IV must be unpredictable, not fresh entropy : generateSeed would read the seed source at each call
+            byte[] iv = new byte[IV_SIZE];
+            random.nextBytes(iv);
+            IvParameterSpec ivParameterClient = new IvParameterSpec(iv);
 
             cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterClient);
             byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
@@ -90,7 +114,7 @@ public class AESUtils {
     public static void main(final String[] args) throws Exception {
         Security.addProvider(new BouncyCastleProvider());
 
-        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        SecureRandom random = ThreadLocalSecureRandom.create();
 
         AESUtils aesUtils = new AESUtils(random);
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.gaellalire.vote.trust.eddsa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
+import org.bouncycastle.crypto.signers.Ed25519Signer;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.SignaturePrivatePart;
+
+/**
+ * @author Gael Lalire
+ */
+public class EdDSAPrivatePart implements SignaturePrivatePart, Serializable {
+
+    private static final long serialVersionUID = 5390127166348806412L;
+
+    private EdDSAPublicPart edDSAPublicPart;
+
+    private byte[] encoded;
+
+    private transient Ed25519PrivateKeyParameters privateKeyParameters;
+
+    public EdDSAPrivatePart(final EdDSAPublicPart edDSAPublicPart, final byte[] encoded) {
+        this.edDSAPublicPart = edDSAPublicPart;
+        this.encoded = encoded;
+    }
+
+    @Override
+    public EdDSAPublicPart getPublicPart() throws TrustException {
+        return edDSAPublicPart;
+    }
+
+    private Ed25519PrivateKeyParameters getPrivateKeyParameters() {
+        Ed25519PrivateKeyParameters privateKeyParameters = this.privateKeyParameters;
+        if (privateKeyParameters == null) {
+            privateKeyParameters = new Ed25519PrivateKeyParameters(encoded, 0);
+            this.privateKeyParameters = privateKeyParameters;
+        }
+        return privateKeyParameters;
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) throws TrustException {
+        return signDigest(EdDSATrustSystem.sha512(data));
+    }
+
+    @Override
+    public byte[] signDigest(final byte[] sha512) throws TrustException {
+        try {
+            Ed25519Signer signer = new Ed25519Signer();
+            signer.init(true, getPrivateKeyParameters());
+            signer.update(sha512, 0, sha512.length);
+            return signer.generateSignature();
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public void sign(final InputStream is, final OutputStream os) throws TrustException {
+        try {
+            os.write(signDigest(EdDSATrustSystem.sha512(is)));
+        } catch (IOException e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public void decrypt(final InputStream is, final OutputStream os) throws TrustException {
+        throw new TrustException("Ed25519 keys can only sign");
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.gaellalire.vote.trust.eddsa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import org.bouncycastle.crypto.params.Ed25519PublicKeyParameters;
+import org.bouncycastle.crypto.signers.Ed25519Signer;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.SignaturePublicPart;
+
+/**
+ * @author Gael Lalire
+ */
+public class EdDSAPublicPart implements SignaturePublicPart, Serializable {
+
+    private static final long serialVersionUID = -2318463470928366155L;
+
+    private byte[] encoded;
+
+    private transient Ed25519PublicKeyParameters publicKeyParameters;
+
+    public EdDSAPublicPart(final byte[] encoded) {
+        this.encoded = encoded;
+    }
+
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    @Override
+    public BigInteger getKey() {
+        return EdDSATrustSystem.encodeKey(encoded);
+    }
+
+    private Ed25519PublicKeyParameters getPublicKeyParameters() {
+        Ed25519PublicKeyParameters publicKeyParameters = this.publicKeyParameters;
+        if (publicKeyParameters == null) {
+            publicKeyParameters = new Ed25519PublicKeyParameters(encoded, 0);
+            this.publicKeyParameters = publicKeyParameters;
+        }
+        return publicKeyParameters;
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signature) throws TrustException {
+        return verifyDigest(EdDSATrustSystem.sha512(data), signature);
+    }
+
+    @Override
+    public boolean verifyDigest(final byte[] sha512, final byte[] signature) throws TrustException {
+        try {
+            Ed25519Signer signer = new Ed25519Signer();
+            signer.init(false, getPublicKeyParameters());
+            signer.update(sha512, 0, sha512.length);
+            return signer.verifySignature(signature);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public boolean verify(final InputStream dataInputStream, final InputStream signatureInputStream) throws TrustException {
+        try {
+            byte[] sha512 = EdDSATrustSystem.sha512(dataInputStream);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[EdDSATrustSystem.BUFFER_SIZE];
+            int len;
+            while ((len = signatureInputStream.read(buf)) > 0) {
+                bos.write(buf, 0, len);
+            }
+            return verifyDigest(sha512, bos.toByteArray());
+        } catch (IOException e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public void encrypt(final InputStream is, final OutputStream os) throws TrustException {
+        throw new TrustException("Ed25519 keys can only sign");
+    }
+
+}
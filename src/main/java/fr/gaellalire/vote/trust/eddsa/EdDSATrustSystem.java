@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.gaellalire.vote.trust.eddsa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.Ed25519PublicKeyParameters;
+
+import fr.gaellalire.vestige.spi.trust.PrivatePart;
+import fr.gaellalire.vestige.spi.trust.Signature;
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
+
+/**
+ * Ed25519 keys : 32 bytes public keys and a key generation much faster than RSA. The signed message is the SHA-512 of the data, so a signature
+ * can be made or checked from a known hash like with RSA. A public key is the unsigned value of its 32 bytes encoding.
+ * @author Gael Lalire
+ */
+public class EdDSATrustSystem implements SignatureTrustSystem {
+
+    public static final int KEY_SIZE = Ed25519PublicKeyParameters.KEY_SIZE;
+
+    public static final int BUFFER_SIZE = 1024;
+
+    private static final int PUBLIC_PART_CACHE_SIZE = 100000;
+
+    private SecureRandom random;
+
+    private Map<BigInteger, EdDSAPublicPart> publicPartByKey = new ConcurrentHashMap<BigInteger, EdDSAPublicPart>();
+
+    public EdDSATrustSystem(final SecureRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public EdDSAPrivatePart generatePrivatePart() throws TrustException {
+        Ed25519PrivateKeyParameters privateKeyParameters = new Ed25519PrivateKeyParameters(random);
+        return new EdDSAPrivatePart(new EdDSAPublicPart(privateKeyParameters.generatePublicKey().getEncoded()), privateKeyParameters.getEncoded());
+    }
+
+    @Override
+    public EdDSAPublicPart publicPartByKey(final BigInteger publicKey) throws TrustException {
+        EdDSAPublicPart edDSAPublicPart = publicPartByKey.get(publicKey);
+        if (edDSAPublicPart == null) {
+            edDSAPublicPart = new EdDSAPublicPart(decodeKey(publicKey));
+            if (publicPartByKey.size() >= PUBLIC_PART_CACHE_SIZE) {
+                // cheaper than a LRU, the cache is filled again by the next calls
+                publicPartByKey.clear();
+            }
+            publicPartByKey.put(publicKey, edDSAPublicPart);
+        }
+        return edDSAPublicPart;
+    }
+
+    static BigInteger encodeKey(final byte[] encoded) {
+        return new BigInteger(1, encoded);
+    }
+
+    static byte[] decodeKey(final BigInteger publicKey) throws TrustException {
+        if (publicKey.signum() < 0 || publicKey.bitLength() > KEY_SIZE * 8) {
+            throw new TrustException("Not an Ed25519 public key");
+        }
+        byte[] bytes = publicKey.toByteArray();
+        byte[] encoded = new byte[KEY_SIZE];
+        // toByteArray may add a sign byte or skip leading zeros
+        int length = Math.min(bytes.length, KEY_SIZE);
+        System.arraycopy(bytes, bytes.length - length, encoded, KEY_SIZE - length, length);
+        return encoded;
+    }
+
+    static byte[] sha512(final byte[] data) {
+        SHA512Digest digest = new SHA512Digest();
+        digest.update(data, 0, data.length);
+        byte[] sha512 = new byte[digest.getDigestSize()];
+        digest.doFinal(sha512, 0);
+        return sha512;
+    }
+
+    static byte[] sha512(final InputStream is) throws IOException {
+        SHA512Digest digest = new SHA512Digest();
+        byte[] buf = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = is.read(buf)) > 0) {
+            digest.update(buf, 0, len);
+        }
+        byte[] sha512 = new byte[digest.getDigestSize()];
+        digest.doFinal(sha512, 0);
+        return sha512;
+    }
+
+    @Override
+    public Signature loadSignature(final InputStream inputStream) throws TrustException {
+        return null;
+    }
+
+    @Override
+    public PrivatePart getDefaultPrivatePart() throws TrustException {
+        return null;
+    }
+
+}
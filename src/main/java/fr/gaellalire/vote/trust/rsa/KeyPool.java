@@ -0,0 +1,265 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust.rsa;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+
+/**
+ * Keep a bounded pool of RSA keys generated in background threads, so that the key generation does not slow down the actor creation. When a
+ * {@link KeyPoolStore} is given, generated keys are saved by batch as soon as a batch is complete, and the rest on close, so a crash loses at
+ * most a batch. A batch file is deleted before its first key is given, a key is never given twice.
+ * @author Gael Lalire
+ */
+public class KeyPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyPool.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Keys saved in a batch file.
+     * @author Gael Lalire
+     */
+    private static final class StoredBatch {
+
+        private File file;
+
+        private ConcurrentLinkedQueue<RSAPrivatePart> keys;
+
+        private boolean deleted;
+
+        StoredBatch(final File file, final List<RSAPrivatePart> keys) {
+            this.file = file;
+            this.keys = new ConcurrentLinkedQueue<RSAPrivatePart>(keys);
+        }
+
+    }
+
+    private RSATrustSystem rsaTrustSystem;
+
+    private int capacity;
+
+    private int batchSize;
+
+    /**
+     * One permit per key which can still be added to the pool.
+     */
+    private Semaphore freeSlots;
+
+    /**
+     * Generated keys not saved yet.
+     */
+    private BlockingQueue<RSAPrivatePart> queue = new LinkedBlockingQueue<RSAPrivatePart>();
+
+    /**
+     * Saved keys, given before the generated ones.
+     */
+    private ConcurrentLinkedQueue<StoredBatch> storedBatches = new ConcurrentLinkedQueue<StoredBatch>();
+
+    private ReentrantLock spillLock = new ReentrantLock();
+
+    private KeyPoolStore keyPoolStore;
+
+    private List<Thread> producers;
+
+    public KeyPool(final RSATrustSystem rsaTrustSystem, final int capacity, final int producerCount, final KeyPoolStore keyPoolStore, final int batchSize) {
+        this.rsaTrustSystem = rsaTrustSystem;
+        this.capacity = capacity;
+        this.keyPoolStore = keyPoolStore;
+        this.batchSize = batchSize;
+        producers = new ArrayList<Thread>(producerCount);
+        for (int i = 0; i < producerCount; i++) {
+            Thread producer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    produce();
+                }
+            }, "key-pool-producer-" + i);
+            producer.setDaemon(true);
+            // generation must not slow down the actors
+            producer.setPriority(Thread.MIN_PRIORITY);
+            producers.add(producer);
+        }
+    }
+
+    public KeyPool(final RSATrustSystem rsaTrustSystem, final int capacity, final KeyPoolStore keyPoolStore) {
+        this(rsaTrustSystem, capacity, Runtime.getRuntime().availableProcessors(), keyPoolStore, DEFAULT_BATCH_SIZE);
+    }
+
+    public void start() throws TrustException {
+        int restored = 0;
+        if (keyPoolStore != null) {
+            // everything is loaded before anything is deleted, a wrong password keeps all the files
+            for (File file : keyPoolStore.list()) {
+                List<RSAPrivatePart> keys = keyPoolStore.load(file);
+                storedBatches.add(new StoredBatch(file, keys));
+                restored += keys.size();
+            }
+            LOGGER.info("{} keys restored", restored);
+        }
+        freeSlots = new Semaphore(capacity - restored);
+        for (Thread producer : producers) {
+            producer.start();
+        }
+    }
+
+    private void produce() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                freeSlots.acquire();
+                try {
+                    queue.add(rsaTrustSystem.createPrivatePart());
+                } catch (TrustException e) {
+                    freeSlots.release();
+                    throw e;
+                }
+                if (keyPoolStore != null && queue.size() >= batchSize) {
+                    spill();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (TrustException e) {
+            LOGGER.error("Key generation failed, producer stopped", e);
+        }
+    }
+
+    /**
+     * Save a batch of generated keys, done by one producer at a time.
+     */
+    private void spill() {
+        if (!spillLock.tryLock()) {
+            return;
+        }
+        try {
+            List<RSAPrivatePart> keys = new ArrayList<RSAPrivatePart>(batchSize);
+            queue.drainTo(keys, batchSize);
+            if (keys.isEmpty()) {
+                return;
+            }
+            File file;
+            try {
+                file = keyPoolStore.save(keys);
+            } catch (TrustException e) {
+                LOGGER.warn("Unable to save a batch of keys, they will be lost on crash", e);
+                queue.addAll(keys);
+                return;
+            }
+            storedBatches.add(new StoredBatch(file, keys));
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private RSAPrivatePart takeStored() {
+        StoredBatch storedBatch = storedBatches.peek();
+        while (storedBatch != null) {
+            synchronized (storedBatch) {
+                if (!storedBatch.deleted) {
+                    try {
+                        keyPoolStore.delete(storedBatch.file);
+                        storedBatch.deleted = true;
+                    } catch (TrustException e) {
+                        LOGGER.error("Batch of keys dropped", e);
+                        storedBatch.keys.clear();
+                    }
+                }
+            }
+            RSAPrivatePart rsaPrivatePart = storedBatch.keys.poll();
+            if (rsaPrivatePart != null) {
+                return rsaPrivatePart;
+            }
+            storedBatches.remove(storedBatch);
+            storedBatch = storedBatches.peek();
+        }
+        return null;
+    }
+
+    /**
+     * Never blocks : if the pool is empty the key is generated by the calling thread.
+     */
+    public RSAPrivatePart take() throws TrustException {
+        RSAPrivatePart rsaPrivatePart = takeStored();
+        if (rsaPrivatePart == null) {
+            rsaPrivatePart = queue.poll();
+            if (rsaPrivatePart == null) {
+                return rsaTrustSystem.createPrivatePart();
+            }
+        }
+        freeSlots.release();
+        return rsaPrivatePart;
+    }
+
+    public int size() {
+        int size = queue.size();
+        for (StoredBatch storedBatch : storedBatches) {
+            size += storedBatch.keys.size();
+        }
+        return size;
+    }
+
+    public void close() throws TrustException {
+        for (Thread producer : producers) {
+            producer.interrupt();
+        }
+        for (Thread producer : producers) {
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (keyPoolStore != null) {
+            // batches already saved stay as they are, only the partially used one is saved again
+            List<RSAPrivatePart> keys = new ArrayList<RSAPrivatePart>();
+            int saved = 0;
+            for (StoredBatch storedBatch : storedBatches) {
+                synchronized (storedBatch) {
+                    if (storedBatch.deleted) {
+                        RSAPrivatePart rsaPrivatePart = storedBatch.keys.poll();
+                        while (rsaPrivatePart != null) {
+                            keys.add(rsaPrivatePart);
+                            rsaPrivatePart = storedBatch.keys.poll();
+                        }
+                    } else {
+                        saved += storedBatch.keys.size();
+                    }
+                }
+            }
+            queue.drainTo(keys);
+            if (!keys.isEmpty()) {
+                keyPoolStore.save(keys);
+            }
+            LOGGER.info("{} keys saved", saved + keys.size());
+        }
+    }
+
+}
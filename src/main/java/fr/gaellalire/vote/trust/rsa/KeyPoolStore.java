@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust.rsa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.HybridEnvelope;
+import fr.gaellalire.vote.trust.aes.AESUtils;
+
+/**
+ * Encrypted files holding the keys of a {@link KeyPool} between two runs, one file per batch of keys (named after the given file with a sequence
+ * number). A file contains a version byte, the PBKDF2 salt, the AES-GCM nonce and the AES-GCM encrypted serialized keys. The tag is checked before
+ * anything is deserialized, a wrong password or a corrupted file is rejected and the file is kept. Files are only deleted by the pool, before the
+ * first key of the batch is given.
+ * @author Gael Lalire
+ */
+public class KeyPoolStore {
+
+    private static final byte VERSION = 2;
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int NONCE_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 16;
+
+    private File file;
+
+    private char[] password;
+
+    private AESUtils aesUtils;
+
+    private SecureRandom random;
+
+    private AtomicLong nextSequence = new AtomicLong();
+
+    public KeyPoolStore(final File file, final char[] password, final AESUtils aesUtils, final SecureRandom random) {
+        this.file = file;
+        this.password = password;
+        this.aesUtils = aesUtils;
+        this.random = random;
+    }
+
+    private long getSequence(final File batchFile) {
+        String suffix = batchFile.getName().substring(file.getName().length() + 1);
+        if (suffix.isEmpty() || suffix.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (!Character.isDigit(suffix.charAt(i))) {
+                return -1;
+            }
+        }
+        return Long.parseLong(suffix);
+    }
+
+    /**
+     * @return the batch files in the order they were saved
+     */
+    public List<File> list() {
+        File directory = file.getAbsoluteFile().getParentFile();
+        final String prefix = file.getName() + ".";
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> batchFiles = new ArrayList<File>(files.length);
+        for (File batchFile : files) {
+            long sequence = getSequence(batchFile);
+            if (sequence >= 0) {
+                batchFiles.add(batchFile);
+                // new batches must not reuse a name
+                nextSequence.accumulateAndGet(sequence + 1, Math::max);
+            }
+        }
+        Collections.sort(batchFiles, (o1, o2) -> Long.compare(getSequence(o1), getSequence(o2)));
+        return batchFiles;
+    }
+
+    /**
+     * The file is not deleted.
+     */
+    @SuppressWarnings("unchecked")
+    public List<RSAPrivatePart> load(final File batchFile) throws TrustException {
+        try {
+            byte[] header = new byte[1 + SALT_LENGTH + NONCE_LENGTH];
+            byte[] encrypted;
+            DataInputStream dataInputStream = new DataInputStream(new FileInputStream(batchFile));
+            try {
+                dataInputStream.readFully(header);
+                if (header[0] != VERSION) {
+                    throw new TrustException("Unsupported key pool file version in " + batchFile);
+                }
+                int length = dataInputStream.readInt();
+                if (length < TAG_LENGTH || length > batchFile.length()) {
+                    throw new TrustException("Corrupted key pool file " + batchFile);
+                }
+                encrypted = new byte[length];
+                dataInputStream.readFully(encrypted);
+            } finally {
+                dataInputStream.close();
+            }
+
+            SecretKey secretKey = aesUtils.deriveKey(password, Arrays.copyOfRange(header, 1, 1 + SALT_LENGTH));
+            byte[] decrypted;
+            try {
+                Cipher cipher = Cipher.getInstance(HybridEnvelope.CIPHER_TRANSFORMATION, BouncyCastleProvider.PROVIDER_NAME);
+                cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH * 8, header, 1 + SALT_LENGTH, NONCE_LENGTH));
+                cipher.updateAAD(header);
+                // GCM only returns the plain text once the tag is verified
+                decrypted = cipher.doFinal(encrypted);
+            } catch (Exception e) {
+                throw new TrustException("Wrong password or corrupted key pool file " + batchFile, e);
+            }
+            ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(decrypted));
+            try {
+                return (List<RSAPrivatePart>) objectInputStream.readObject();
+            } finally {
+                objectInputStream.close();
+            }
+        } catch (TrustException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    /**
+     * @return the new batch file
+     */
+    public File save(final List<RSAPrivatePart> keys) throws TrustException {
+        try {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized);
+            try {
+                objectOutputStream.writeObject(new ArrayList<RSAPrivatePart>(keys));
+            } finally {
+                objectOutputStream.close();
+            }
+
+            byte[] header = new byte[1 + SALT_LENGTH + NONCE_LENGTH];
+            header[0] = VERSION;
+            byte[] salt = new byte[SALT_LENGTH];
+            random.nextBytes(salt);
+            System.arraycopy(salt, 0, header, 1, SALT_LENGTH);
+            byte[] nonce = new byte[NONCE_LENGTH];
+            random.nextBytes(nonce);
+            System.arraycopy(nonce, 0, header, 1 + SALT_LENGTH, NONCE_LENGTH);
+            SecretKey secretKey = aesUtils.deriveKey(password, salt);
+            Cipher cipher = Cipher.getInstance(HybridEnvelope.CIPHER_TRANSFORMATION, BouncyCastleProvider.PROVIDER_NAME);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            byte[] encrypted = cipher.doFinal(serialized.toByteArray());
+
+            File batchFile = new File(file.getPath() + "." + nextSequence.getAndIncrement());
+            File tmpFile = new File(file.getPath() + ".tmp");
+            synchronized (this) {
+                DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(tmpFile));
+                try {
+                    dataOutputStream.write(header);
+                    dataOutputStream.writeInt(encrypted.length);
+                    dataOutputStream.write(encrypted);
+                } finally {
+                    dataOutputStream.close();
+                }
+                if (!tmpFile.renameTo(batchFile)) {
+                    throw new TrustException("Unable to rename " + tmpFile + " to " + batchFile);
+                }
+            }
+            return batchFile;
+        } catch (TrustException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    public void delete(final File batchFile) throws TrustException {
+        if (batchFile.exists() && !batchFile.delete()) {
+            throw new TrustException("Unable to delete " + batchFile + ", keys would be given twice");
+        }
+    }
+
+}
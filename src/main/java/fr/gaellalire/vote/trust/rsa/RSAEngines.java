@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.trust.rsa;
+
+import java.security.KeyFactory;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * Signature and Cipher are not thread safe but can be reinitialized, so each thread keeps its own instances instead of doing a provider lookup
+ * at each call.
+ * @author Gael Lalire
+ */
+final class RSAEngines {
+
+    public static final String SIGNATURE_ALGORITHM = "SHA512withRSA";
+
+    public static final String RAW_SIGNATURE_ALGORITHM = "NONEwithRSA";
+
+    public static final String CIPHER_TRANSFORMATION = "RSA/None/OAEPWithSHA1AndMGF1Padding";
+
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> createSignature(SIGNATURE_ALGORITHM));
+
+    private static final ThreadLocal<Signature> RAW_SIGNATURE = ThreadLocal.withInitial(() -> createSignature(RAW_SIGNATURE_ALGORITHM));
+
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> createCipher(CIPHER_TRANSFORMATION));
+
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> createKeyFactory());
+
+    private RSAEngines() {
+    }
+
+    private static Signature createSignature(final String algorithm) {
+        try {
+            return Signature.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create " + algorithm + " signature", e);
+        }
+    }
+
+    private static Cipher createCipher(final String transformation) {
+        try {
+            return Cipher.getInstance(transformation, BouncyCastleProvider.PROVIDER_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create " + transformation + " cipher", e);
+        }
+    }
+
+    private static KeyFactory createKeyFactory() {
+        try {
+            return KeyFactory.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create RSA key factory", e);
+        }
+    }
+
+    /**
+     * Must be initialized (initSign or initVerify) before use.
+     */
+    public static Signature signature() {
+        return SIGNATURE.get();
+    }
+
+    /**
+     * Must be initialized (initSign or initVerify) before use.
+     */
+    public static Signature rawSignature() {
+        return RAW_SIGNATURE.get();
+    }
+
+    /**
+     * Must be initialized before use.
+     */
+    public static Cipher cipher() {
+        return CIPHER.get();
+    }
+
+    public static KeyFactory keyFactory() {
+        return KEY_FACTORY.get();
+    }
+
+}
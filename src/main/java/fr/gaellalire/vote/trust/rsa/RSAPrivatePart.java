@@ -16,6 +16,7 @@
 
 package fr.gaellalire.vote.trust.rsa;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
@@ -24,15 +25,13 @@ import java.security.Signature;
 
 import javax.crypto.Cipher;
 
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-
-import fr.gaellalire.vestige.spi.trust.PrivatePart;
 import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.SignaturePrivatePart;
 
 /**
  * @author Gael Lalire
  */
-public class RSAPrivatePart implements PrivatePart, Serializable {
+public class RSAPrivatePart implements SignaturePrivatePart, Serializable {
 
     private static final long serialVersionUID = -710911401137162313L;
 
@@ -50,19 +49,44 @@ public class RSAPrivatePart implements PrivatePart, Serializable {
         return rsaPublicPart;
     }
 
+    public byte[] decrypt(final byte[] data) throws TrustException {
+        try {
+            Cipher cipher = RSAEngines.cipher();
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            return cipher.doFinal(data);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
     @Override
     public void decrypt(final InputStream is, final OutputStream os) throws TrustException {
         try {
-            Cipher cipher = Cipher.getInstance("RSA/None/OAEPWithSHA1AndMGF1Padding", BouncyCastleProvider.PROVIDER_NAME);
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
-            byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
-            byte[] bufOutput = new byte[RSATrustSystem.BUFFER_SIZE];
-            int len;
-            while ((len = is.read(buf)) > 0) {
-                int update = cipher.update(buf, 0, len, bufOutput);
-                os.write(bufOutput, 0, update);
-            }
-            os.write(cipher.doFinal());
+            os.write(decrypt(RSAPublicPart.readFully(is)));
+        } catch (IOException e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) throws TrustException {
+        try {
+            Signature signature = RSAEngines.signature();
+            signature.initSign(privateKey);
+            signature.update(data);
+            return signature.sign();
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public byte[] signDigest(final byte[] sha512) throws TrustException {
+        try {
+            Signature signature = RSAEngines.rawSignature();
+            signature.initSign(privateKey);
+            signature.update(RSATrustSystem.sha512DigestInfo(sha512));
+            return signature.sign();
         } catch (Exception e) {
             throw new TrustException(e);
         }
@@ -71,7 +95,7 @@ public class RSAPrivatePart implements PrivatePart, Serializable {
     @Override
     public void sign(final InputStream is, final OutputStream os) throws TrustException {
         try {
-            Signature signature = Signature.getInstance("SHA512withRSA", BouncyCastleProvider.PROVIDER_NAME);
+            Signature signature = RSAEngines.signature();
             signature.initSign(privateKey);
             byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
             int len;
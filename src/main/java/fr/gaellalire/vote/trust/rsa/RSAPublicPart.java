@@ -17,6 +17,7 @@
 package fr.gaellalire.vote.trust.rsa;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
@@ -27,15 +28,13 @@ import java.security.interfaces.RSAPublicKey;
 
 import javax.crypto.Cipher;
 
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-
-import fr.gaellalire.vestige.spi.trust.PublicPart;
 import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.SignaturePublicPart;
 
 /**
  * @author Gael Lalire
  */
-public class RSAPublicPart implements PublicPart, Serializable {
+public class RSAPublicPart implements SignaturePublicPart, Serializable {
 
     private static final long serialVersionUID = 7395249350432971078L;
 
@@ -50,18 +49,48 @@ public class RSAPublicPart implements PublicPart, Serializable {
     }
 
     @Override
-    public void encrypt(final InputStream is, final OutputStream os) throws TrustException {
+    public BigInteger getKey() {
+        return publicKey.getModulus();
+    }
+
+    public byte[] encrypt(final byte[] data) throws TrustException {
         try {
-            Cipher cipher = Cipher.getInstance("RSA/None/OAEPWithSHA1AndMGF1Padding", BouncyCastleProvider.PROVIDER_NAME);
+            Cipher cipher = RSAEngines.cipher();
             cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-            byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
-            byte[] bufOutput = new byte[RSATrustSystem.BUFFER_SIZE];
-            int len;
-            while ((len = is.read(buf)) > 0) {
-                int update = cipher.update(buf, 0, len, bufOutput);
-                os.write(bufOutput, 0, update);
-            }
-            os.write(cipher.doFinal());
+            return cipher.doFinal(data);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public void encrypt(final InputStream is, final OutputStream os) throws TrustException {
+        try {
+            os.write(encrypt(readFully(is)));
+        } catch (IOException e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public boolean verifyDigest(final byte[] sha512, final byte[] signatureBytes) throws TrustException {
+        try {
+            Signature signature = RSAEngines.rawSignature();
+            signature.initVerify(publicKey);
+            signature.update(RSATrustSystem.sha512DigestInfo(sha512));
+            return signature.verify(signatureBytes);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes) throws TrustException {
+        try {
+            Signature signature = RSAEngines.signature();
+            signature.initVerify(publicKey);
+            signature.update(data);
+            return signature.verify(signatureBytes);
         } catch (Exception e) {
             throw new TrustException(e);
         }
@@ -70,21 +99,27 @@ public class RSAPublicPart implements PublicPart, Serializable {
     @Override
     public boolean verify(final InputStream dataInputStream, final InputStream signatureInputStream) throws TrustException {
         try {
-            Signature signature = Signature.getInstance("SHA512withRSA", BouncyCastleProvider.PROVIDER_NAME);
+            Signature signature = RSAEngines.signature();
             signature.initVerify(publicKey);
             byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
             int len;
             while ((len = dataInputStream.read(buf)) > 0) {
                 signature.update(buf, 0, len);
             }
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            while ((len = signatureInputStream.read(buf)) > 0) {
-                bos.write(buf, 0, len);
-            }
-            return signature.verify(bos.toByteArray());
+            return signature.verify(readFully(signatureInputStream));
         } catch (Exception e) {
             throw new TrustException(e);
         }
     }
 
+    static byte[] readFully(final InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[RSATrustSystem.BUFFER_SIZE];
+        int len;
+        while ((len = is.read(buf)) > 0) {
+            bos.write(buf, 0, len);
+        }
+        return bos.toByteArray();
+    }
+
 }
@@ -20,13 +20,17 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.KeyFactory;
 import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPrivateKeySpec;
+import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
@@ -38,19 +42,50 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import fr.gaellalire.vestige.spi.trust.PrivatePart;
 import fr.gaellalire.vestige.spi.trust.Signature;
 import fr.gaellalire.vestige.spi.trust.TrustException;
-import fr.gaellalire.vestige.spi.trust.TrustSystem;
+import fr.gaellalire.vote.trust.SignatureTrustSystem;
 
 /**
  * @author Gael Lalire
  */
-public class RSATrustSystem implements TrustSystem {
+public class RSATrustSystem implements SignatureTrustSystem {
 
     public static BigInteger publicExponent = new BigInteger("10001", 16);
 
     public static final int BUFFER_SIZE = 1024;
 
+    /**
+     * DER encoding of the DigestInfo header of a SHA-512 hash (PKCS #1 v1.5), a SHA512withRSA signature is a NONEwithRSA signature of this
+     * header followed by the hash.
+     */
+    private static final byte[] SHA512_DIGEST_INFO_PREFIX = new byte[] {0x30, 0x51, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x03, 0x05,
+            0x00, 0x04, 0x40};
+
+    private static final int PUBLIC_PART_CACHE_SIZE = 100000;
+
+    /**
+     * @author Gael Lalire
+     */
+    private static final class PublicPartCache extends LinkedHashMap<BigInteger, RSAPublicPart> {
+
+        private static final long serialVersionUID = -2385120775310262951L;
+
+        PublicPartCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<BigInteger, RSAPublicPart> eldest) {
+            return size() > PUBLIC_PART_CACHE_SIZE;
+        }
+
+    }
+
     private SecureRandom random;
 
+    private Map<BigInteger, RSAPublicPart> publicPartByModulus = new PublicPartCache();
+
+    private KeyPool keyPool;
+
     public RSATrustSystem(final SecureRandom random) {
         this.random = random;
     }
@@ -75,7 +110,51 @@ public class RSATrustSystem implements TrustSystem {
         }
     }
 
+    public static byte[] sha512(final byte[] data) throws TrustException {
+        try {
+            return MessageDigest.getInstance("SHA-512", BouncyCastleProvider.PROVIDER_NAME).digest(data);
+        } catch (Exception e) {
+            throw new TrustException(e);
+        }
+    }
+
+    static byte[] sha512DigestInfo(final byte[] sha512) {
+        byte[] digestInfo = new byte[SHA512_DIGEST_INFO_PREFIX.length + sha512.length];
+        System.arraycopy(SHA512_DIGEST_INFO_PREFIX, 0, digestInfo, 0, SHA512_DIGEST_INFO_PREFIX.length);
+        System.arraycopy(sha512, 0, digestInfo, SHA512_DIGEST_INFO_PREFIX.length, sha512.length);
+        return digestInfo;
+    }
+
+    /**
+     * Public parts are built for each received signature, keep the converted keys of the most recent modulus.
+     */
     public RSAPublicPart publicPartByModulus(final BigInteger modulus) {
+        RSAPublicPart rsaPublicPart;
+        synchronized (publicPartByModulus) {
+            rsaPublicPart = publicPartByModulus.get(modulus);
+        }
+        if (rsaPublicPart == null) {
+            // built outside the lock, two threads may build the same key
+            rsaPublicPart = createPublicPart(modulus);
+            synchronized (publicPartByModulus) {
+                publicPartByModulus.put(modulus, rsaPublicPart);
+            }
+        }
+        return rsaPublicPart;
+    }
+
+    @Override
+    public RSAPublicPart publicPartByKey(final BigInteger publicKey) {
+        return publicPartByModulus(publicKey);
+    }
+
+    private RSAPublicPart createPublicPart(final BigInteger modulus) {
+        try {
+            // provider key, so that the provider does not convert it at each init
+            return new RSAPublicPart(RSAEngines.keyFactory().generatePublic(new RSAPublicKeySpec(modulus, publicExponent)));
+        } catch (Exception e) {
+            // invalid modulus, the failure will be reported when the key is used
+        }
         return new RSAPublicPart(new RSAPublicKey() {
 
             private static final long serialVersionUID = -8674185657460479104L;
@@ -108,7 +187,19 @@ public class RSATrustSystem implements TrustSystem {
 
     }
 
+    public void setKeyPool(final KeyPool keyPool) {
+        this.keyPool = keyPool;
+    }
+
+    @Override
     public RSAPrivatePart generatePrivatePart() throws TrustException {
+        if (keyPool != null) {
+            return keyPool.take();
+        }
+        return createPrivatePart();
+    }
+
+    RSAPrivatePart createPrivatePart() throws TrustException {
         KeyPair keyPair = generateKeyPair();
 
         RSAPublicPart rsaPublicPart = new RSAPublicPart(keyPair.getPublic());
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
+import fr.gaellalire.vote.trust.aes.AESUtils;
+
+/**
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AESBenchmark {
+
+    /**
+     * A voting modulus and a voting modulus list of 1000 citizens.
+     */
+    @Param({"129", "129000"})
+    private int size;
+
+    private AESUtils aesUtils;
+
+    private SecretKey secretKey;
+
+    private byte[] data;
+
+    private byte[] iv;
+
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        SecureRandom random = ThreadLocalSecureRandom.create();
+        aesUtils = new AESUtils(random);
+        secretKey = aesUtils.generateKey();
+        data = new byte[size];
+        random.nextBytes(data);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        iv = aesUtils.encrypt(secretKey, new ByteArrayInputStream(data), os);
+        encrypted = os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(size + 16);
+        aesUtils.encrypt(secretKey, new ByteArrayInputStream(data), os);
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(size);
+        aesUtils.decrypt(iv, secretKey, new ByteArrayInputStream(encrypted), os);
+        return os.toByteArray();
+    }
+
+}
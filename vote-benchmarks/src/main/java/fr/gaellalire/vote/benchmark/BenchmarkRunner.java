@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks and write the results as JSON so that runs can be compared from one commit to another.
+ * Usage : <code>java -jar benchmarks.jar [result file] [include regexp]</code>
+ * @author Gael Lalire
+ */
+public final class BenchmarkRunner {
+
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        String resultFile = DEFAULT_RESULT_FILE;
+        if (args.length > 0) {
+            resultFile = args[0];
+        }
+        File parentFile = new File(resultFile).getAbsoluteFile().getParentFile();
+        if (parentFile != null) {
+            parentFile.mkdirs();
+        }
+
+        ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().resultFormat(ResultFormatType.JSON).result(resultFile);
+        if (args.length > 1) {
+            optionsBuilder.include(args[1]);
+        } else {
+            optionsBuilder.include("fr\\.gaellalire\\.vote\\..*");
+        }
+        new Runner(optionsBuilder.build()).run();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
+import fr.gaellalire.vote.trust.eddsa.EdDSAPrivatePart;
+import fr.gaellalire.vote.trust.eddsa.EdDSAPublicPart;
+import fr.gaellalire.vote.trust.eddsa.EdDSATrustSystem;
+
+/**
+ * Same operations as {@link RSABenchmark} with Ed25519 keys.
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EdDSABenchmark {
+
+    private EdDSATrustSystem edDSATrustSystem;
+
+    private EdDSAPrivatePart edDSAPrivatePart;
+
+    private EdDSAPublicPart edDSAPublicPart;
+
+    /**
+     * Same size as a voting modulus list of 1000 citizens.
+     */
+    private byte[] data = new byte[129 * 1000];
+
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        edDSATrustSystem = new EdDSATrustSystem(ThreadLocalSecureRandom.create());
+        edDSAPrivatePart = edDSATrustSystem.generatePrivatePart();
+        edDSAPublicPart = edDSATrustSystem.publicPartByKey(edDSAPrivatePart.getPublicPart().getKey());
+        signature = edDSAPrivatePart.sign(data);
+    }
+
+    @Benchmark
+    public EdDSAPrivatePart generatePrivatePart() throws TrustException {
+        return edDSATrustSystem.generatePrivatePart();
+    }
+
+    @Benchmark
+    public byte[] sign() throws TrustException {
+        return edDSAPrivatePart.sign(data);
+    }
+
+    @Benchmark
+    public boolean verify() throws TrustException {
+        return edDSAPublicPart.verify(data, signature);
+    }
+
+}
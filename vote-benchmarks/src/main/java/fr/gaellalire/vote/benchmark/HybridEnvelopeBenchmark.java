@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vote.trust.HybridEnvelope;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
+import fr.gaellalire.vote.trust.aes.AESUtils;
+import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
+
+/**
+ * Sending a voting key to the polling station : AES-CBC with a separate RSA wrapped key (previous protocol) against a single AES-GCM envelope.
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HybridEnvelopeBenchmark {
+
+    private AESUtils aesUtils;
+
+    private HybridEnvelope hybridEnvelope;
+
+    private RSAPrivatePart pollingStationPrivatePart;
+
+    private byte[] votingKey;
+
+    private byte[] iv;
+
+    private byte[] aesKeyRSACrypted;
+
+    private byte[] votingKeyAESCrypted;
+
+    private byte[] envelope;
+
+    @Setup
+    public void setup() throws Exception {
+        RSATrustSystem rsaTrustSystem = VoteFixture.createRSATrustSystem();
+        SecureRandom random = ThreadLocalSecureRandom.create();
+        aesUtils = new AESUtils(random);
+        hybridEnvelope = new HybridEnvelope(random);
+        pollingStationPrivatePart = rsaTrustSystem.generatePrivatePart();
+        votingKey = pollingStationPrivatePart.getPublicPart().getModulus().toByteArray();
+
+        SecretKey secretKey = aesUtils.generateKey();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        iv = aesUtils.encrypt(secretKey, new ByteArrayInputStream(votingKey), os);
+        votingKeyAESCrypted = os.toByteArray();
+        aesKeyRSACrypted = pollingStationPrivatePart.getPublicPart().encrypt(secretKey.getEncoded());
+
+        envelope = hybridEnvelope.seal(pollingStationPrivatePart.getPublicPart(), votingKey);
+    }
+
+    @Benchmark
+    public byte[] cbcEncrypt() throws Exception {
+        SecretKey secretKey = aesUtils.generateKey();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        aesUtils.encrypt(secretKey, new ByteArrayInputStream(votingKey), os);
+        pollingStationPrivatePart.getPublicPart().encrypt(secretKey.getEncoded());
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cbcDecrypt() throws Exception {
+        byte[] decodedKey = pollingStationPrivatePart.decrypt(aesKeyRSACrypted);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        aesUtils.decrypt(iv, new SecretKeySpec(decodedKey, "AES"), new ByteArrayInputStream(votingKeyAESCrypted), os);
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] envelopeSeal() throws Exception {
+        return hybridEnvelope.seal(pollingStationPrivatePart.getPublicPart(), votingKey);
+    }
+
+    @Benchmark
+    public byte[] envelopeOpen() throws Exception {
+        return HybridEnvelope.open(pollingStationPrivatePart, envelope);
+    }
+
+}
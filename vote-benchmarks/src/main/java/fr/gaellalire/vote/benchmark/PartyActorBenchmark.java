@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Persistence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vote.Ballot;
+import fr.gaellalire.vote.Judgment;
+import fr.gaellalire.vote.actor.party.PartyActor;
+import fr.gaellalire.vote.actor.party.service.PartyResult;
+import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+
+/**
+ * Votes sent to a {@link PartyActor} without a RMI registry.
+ * @author Gael Lalire
+ */
+@Fork(1)
+public class PartyActorBenchmark {
+
+    public static final int CITIZEN_NUMBER = 100;
+
+    public static final int CANDIDATE_NUMBER = 10;
+
+    /**
+     * Number of RMI threads calling vote concurrently.
+     */
+    public static final int VOTER_THREADS = 8;
+
+    /**
+     * A party which received the voting modulus list of the fixture polling station.
+     */
+    public abstract static class PartyState {
+
+        protected VoteFixture voteFixture;
+
+        protected RSAPrivatePart partyPrivatePart;
+
+        protected PartyActor partyActor;
+
+        protected List<Ballot> ballots = new ArrayList<Ballot>();
+
+        protected List<byte[]> ballotSignatures = new ArrayList<byte[]>();
+
+        protected ExecutorService executorService;
+
+        public void setupParty() throws Exception {
+            voteFixture = new VoteFixture(CITIZEN_NUMBER);
+            partyPrivatePart = voteFixture.getRSATrustSystem().generatePrivatePart();
+            createPartyActor();
+
+            Random random = new Random(0);
+            Judgment[] values = Judgment.values();
+            for (int i = 0; i < CITIZEN_NUMBER; i++) {
+                Judgment[] judgments = new Judgment[CANDIDATE_NUMBER];
+                for (int j = 0; j < CANDIDATE_NUMBER; j++) {
+                    judgments[j] = values[random.nextInt(values.length)];
+                }
+                Ballot ballot = new Ballot(judgments);
+                ballots.add(ballot);
+                ballotSignatures.add(voteFixture.getVotingPrivateParts().get(i).sign(ballot.getEncoded()));
+            }
+            executorService = Executors.newFixedThreadPool(VOTER_THREADS);
+        }
+
+        /**
+         * A new database each time, so the tally of the actor matches its votes.
+         */
+        public void createPartyActor() throws Exception {
+            partyActor = PartyActor.create(Persistence.createEntityManagerFactory("partyPersistenceUnit", VoteFixture.createEntityManagerProperties("party")),
+                    partyPrivatePart, "0", voteFixture.getStateActor(), voteFixture.getRSATrustSystem());
+            partyActor.init();
+            partyActor.setPollingStationData(VoteFixture.POLLING_STATION_NAME, voteFixture.getVotingModulusList(), voteFixture.getVotingSignatureList());
+        }
+
+        public void voteAll() throws Exception {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(CITIZEN_NUMBER);
+            for (int i = 0; i < CITIZEN_NUMBER; i++) {
+                final int citizen = i;
+                futures.add(executorService.submit(() -> {
+                    partyActor.vote(voteFixture.getVotingModulus().get(citizen), ballots.get(citizen), ballotSignatures.get(citizen));
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executorService.shutdown();
+            partyActor.close();
+            voteFixture.close();
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class VoteState extends PartyState {
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            setupParty();
+        }
+
+        /**
+         * Deleting the votes would not reset the tally and the last vote id kept in memory by the actor.
+         */
+        @Setup(Level.Invocation)
+        public void recreatePartyActor() throws Exception {
+            partyActor.close();
+            createPartyActor();
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class EndVoteState extends PartyState {
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            setupParty();
+            voteAll();
+        }
+
+    }
+
+    /**
+     * All the ballots of the polling station sent by {@link #VOTER_THREADS} threads, reported per ballot.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    @OperationsPerInvocation(CITIZEN_NUMBER)
+    public void vote(final VoteState voteState) throws Exception {
+        voteState.voteAll();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public List<PartyResult> endVote(final EndVoteState endVoteState) {
+        return endVoteState.partyActor.endVote();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vestige.spi.trust.TrustException;
+import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.rsa.RSAPublicPart;
+import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
+
+/**
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RSABenchmark {
+
+    private RSATrustSystem rsaTrustSystem;
+
+    private RSAPrivatePart rsaPrivatePart;
+
+    private RSAPublicPart rsaPublicPart;
+
+    /**
+     * Same size as a voting modulus list of 1000 citizens.
+     */
+    private byte[] data = new byte[129 * 1000];
+
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        rsaTrustSystem = VoteFixture.createRSATrustSystem();
+        rsaPrivatePart = rsaTrustSystem.generatePrivatePart();
+        rsaPublicPart = rsaTrustSystem.publicPartByModulus(rsaPrivatePart.getPublicPart().getModulus());
+        signature = rsaPrivatePart.sign(data);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public RSAPrivatePart generatePrivatePart() throws TrustException {
+        return rsaTrustSystem.generatePrivatePart();
+    }
+
+    @Benchmark
+    public byte[] sign() throws TrustException {
+        return rsaPrivatePart.sign(data);
+    }
+
+    @Benchmark
+    public boolean verify() throws TrustException {
+        return rsaPublicPart.verify(data, signature);
+    }
+
+}
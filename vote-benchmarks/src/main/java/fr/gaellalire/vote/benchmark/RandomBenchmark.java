@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
+
+/**
+ * Getting an AES IV from the shared BC DEFAULT random (generateSeed and nextBytes) or from a per thread DRBG, with concurrent actor threads.
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RandomBenchmark {
+
+    private SecureRandom sharedRandom;
+
+    private SecureRandom threadLocalRandom;
+
+    @Setup
+    public void setup() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        sharedRandom = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+        threadLocalRandom = ThreadLocalSecureRandom.create();
+    }
+
+    @Benchmark
+    public byte[] sharedGenerateSeed() {
+        return sharedRandom.generateSeed(16);
+    }
+
+    @Benchmark
+    public byte[] sharedNextBytes() {
+        byte[] iv = new byte[16];
+        sharedRandom.nextBytes(iv);
+        return iv;
+    }
+
+    @Benchmark
+    public byte[] threadLocalNextBytes() {
+        byte[] iv = new byte[16];
+        threadLocalRandom.nextBytes(iv);
+        return iv;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+public class StateActorBenchmark {
+
+    @Param({"100"})
+    private int citizenNumber;
+
+    private VoteFixture voteFixture;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        voteFixture = new VoteFixture(citizenNumber);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearModulus() {
+        VoteFixture.executeUpdates(voteFixture.getStateActor(), "DELETE FROM PollingStationModulus");
+    }
+
+    @Benchmark
+    public void setPollingStationData() throws RemoteException {
+        voteFixture.getStateActor().setPollingStationData(VoteFixture.POLLING_STATION_NAME, voteFixture.getVotingModulusList(), voteFixture.getVotingSignatureList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        voteFixture.close();
+    }
+
+}
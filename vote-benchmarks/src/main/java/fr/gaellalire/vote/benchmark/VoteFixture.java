@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Persistence;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import fr.gaellalire.vote.actor.RemoteActor;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+import fr.gaellalire.vote.actor.polling_station.service.VotingSignatureList;
+import fr.gaellalire.vote.actor.state.StateActor;
+import fr.gaellalire.vote.trust.ThreadLocalSecureRandom;
+import fr.gaellalire.vote.trust.rsa.RSAPrivatePart;
+import fr.gaellalire.vote.trust.rsa.RSATrustSystem;
+
+/**
+ * A state with one polling station backed by an in memory H2 database, its citizens and a voting modulus list signed by all of them.
+ * @author Gael Lalire
+ */
+public class VoteFixture {
+
+    public static final String POLLING_STATION_NAME = "0";
+
+    private RSATrustSystem rsaTrustSystem;
+
+    private StateActor stateActor;
+
+    private List<String> ssNumbers = new ArrayList<String>();
+
+    private List<RSAPrivatePart> votingPrivateParts = new ArrayList<RSAPrivatePart>();
+
+    private List<BigInteger> votingModulus = new ArrayList<BigInteger>();
+
+    private VotingModulusList votingModulusList = new VotingModulusList();
+
+    private VotingSignatureList votingSignatureList = new VotingSignatureList();
+
+    public VoteFixture(final int citizenNumber) throws Exception {
+        rsaTrustSystem = createRSATrustSystem();
+        stateActor = new StateActor(Persistence.createEntityManagerFactory("statePersistenceUnit", createEntityManagerProperties("state")), rsaTrustSystem);
+        stateActor.addPollingStation(POLLING_STATION_NAME, "localhost", "PollingStation" + POLLING_STATION_NAME, new byte[64]);
+
+        List<RSAPrivatePart> ssPrivateParts = new ArrayList<RSAPrivatePart>(citizenNumber);
+        for (int i = 0; i < citizenNumber; i++) {
+            String ssNumber = "SS" + i;
+            RSAPrivatePart ssPrivatePart = rsaTrustSystem.generatePrivatePart();
+            stateActor.addCitizen(ssNumber, POLLING_STATION_NAME, ssPrivatePart.getPublicPart().getModulus());
+            ssNumbers.add(ssNumber);
+            ssPrivateParts.add(ssPrivatePart);
+
+            RSAPrivatePart votingPrivatePart = rsaTrustSystem.generatePrivatePart();
+            votingPrivateParts.add(votingPrivatePart);
+            votingModulus.add(votingPrivatePart.getPublicPart().getModulus());
+        }
+
+        // frozen list is sorted, votingModulus keeps the order of votingPrivateParts
+        votingModulusList.getModulus().addAll(votingModulus);
+        votingModulusList.freeze();
+        byte[] sha512 = votingModulusList.getSha512();
+        Map<String, byte[]> signatureBySSNumber = votingSignatureList.getSignatureBySSNumber();
+        for (int i = 0; i < citizenNumber; i++) {
+            signatureBySSNumber.put(ssNumbers.get(i), ssPrivateParts.get(i).signDigest(sha512));
+        }
+    }
+
+    public static RSATrustSystem createRSATrustSystem() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        SecureRandom random = ThreadLocalSecureRandom.create();
+        return new RSATrustSystem(random);
+    }
+
+    public static Map<String, String> createEntityManagerProperties(final String databaseName) {
+        Map<String, String> entityManagerProperties = new HashMap<>();
+        entityManagerProperties.put("hibernate.hbm2ddl.auto", "create");
+        entityManagerProperties.put("connection.driver_class", "org.h2.Driver");
+        entityManagerProperties.put("hibernate.connection.url", "jdbc:h2:mem:" + databaseName + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        entityManagerProperties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        return entityManagerProperties;
+    }
+
+    /**
+     * Run native deletes in their own transaction, used to reset the database between invocations.
+     */
+    public static void executeUpdates(final RemoteActor remoteActor, final String... sqlStatements) {
+        remoteActor.beginTransaction();
+        EntityManager entityManager = remoteActor.getEntityManager();
+        for (String sqlStatement : sqlStatements) {
+            entityManager.createNativeQuery(sqlStatement).executeUpdate();
+        }
+        remoteActor.commit();
+        entityManager.clear();
+    }
+
+    public RSATrustSystem getRSATrustSystem() {
+        return rsaTrustSystem;
+    }
+
+    public StateActor getStateActor() {
+        return stateActor;
+    }
+
+    public List<String> getSSNumbers() {
+        return ssNumbers;
+    }
+
+    public List<RSAPrivatePart> getVotingPrivateParts() {
+        return votingPrivateParts;
+    }
+
+    public List<BigInteger> getVotingModulus() {
+        return votingModulus;
+    }
+
+    public VotingModulusList getVotingModulusList() {
+        return votingModulusList;
+    }
+
+    public VotingSignatureList getVotingSignatureList() {
+        return votingSignatureList;
+    }
+
+    public void close() {
+        stateActor.close();
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.gaellalire.vote.benchmark;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.gaellalire.vote.actor.polling_station.service.VotingListSnapshot;
+import fr.gaellalire.vote.actor.polling_station.service.VotingModulusList;
+
+/**
+ * @author Gael Lalire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VotingModulusListBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int citizenNumber;
+
+    private VotingModulusList votingModulusList;
+
+    private VotingModulusList frozenVotingModulusList;
+
+    private BigInteger lastModulus;
+
+    @Setup
+    public void setup() {
+        // encoding does not care whether the modulus are real RSA keys
+        Random random = new Random(0);
+        votingModulusList = new VotingModulusList();
+        for (int i = 0; i < citizenNumber; i++) {
+            votingModulusList.getModulus().add(new BigInteger(1024, random).setBit(1023));
+        }
+        frozenVotingModulusList = new VotingModulusList();
+        frozenVotingModulusList.getModulus().addAll(votingModulusList.getModulus());
+        frozenVotingModulusList.freeze();
+        lastModulus = votingModulusList.getModulus().get(citizenNumber - 1);
+    }
+
+    @Benchmark
+    public byte[] getEncoded() {
+        return votingModulusList.getEncoded();
+    }
+
+    @Benchmark
+    public byte[] getSha512() {
+        return votingModulusList.getSha512();
+    }
+
+    @Benchmark
+    public byte[] getFrozenSha512() {
+        return frozenVotingModulusList.getSha512();
+    }
+
+    @Benchmark
+    public VotingListSnapshot snapshot() {
+        return VotingListSnapshot.of(frozenVotingModulusList);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return votingModulusList.contains(lastModulus);
+    }
+
+    @Benchmark
+    public boolean getFrozenContains() {
+        return frozenVotingModulusList.contains(lastModulus);
+    }
+
+}